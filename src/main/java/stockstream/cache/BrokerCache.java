@@ -13,12 +13,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import stockstream.api.Position;
 import stockstream.api.StockStreamAPI;
 import stockstream.computer.AssetComputer;
+import stockstream.data.MarketPhase;
 import stockstream.data.OrderResult;
 import stockstream.database.Asset;
 import stockstream.database.AssetRegistry;
 import stockstream.database.RobinhoodAccountRegistry;
 import stockstream.logic.PubSub;
 import stockstream.logic.Scheduler;
+import stockstream.logic.scheduler.MarketSchedule;
+import stockstream.logic.scheduler.OverrunPolicy;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
@@ -29,6 +32,12 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class BrokerCache {
 
+    // Account reload period per market phase, 0 stops reloads in that phase. Setting them all to 10 restores the old fixed cadence.
+    private static final long BROKER_ACCOUNT_REGULAR_HOURS_SECONDS = Long.valueOf(System.getenv().getOrDefault("BROKER_ACCOUNT_REGULAR_HOURS_SECONDS", "10"));
+    private static final long BROKER_ACCOUNT_AFTER_HOURS_SECONDS = Long.valueOf(System.getenv().getOrDefault("BROKER_ACCOUNT_AFTER_HOURS_SECONDS", "60"));
+    private static final long BROKER_ACCOUNT_OFF_HOURS_SECONDS = Long.valueOf(System.getenv().getOrDefault("BROKER_ACCOUNT_OFF_HOURS_SECONDS", "900"));
+    private static final long BROKER_ACCOUNT_CLOSED_SECONDS = Long.valueOf(System.getenv().getOrDefault("BROKER_ACCOUNT_CLOSED_SECONDS", "3600"));
+
     private class UpdateAccountRunnable implements Runnable {
 
         @Override
@@ -113,8 +122,17 @@ public class BrokerCache {
 
     @PostConstruct
     public void init() {
-        scheduler.scheduleJob(updateAccountRunnable, 5L, 10, TimeUnit.SECONDS);
-        pubSub.subscribeRunnableToClassType(updateAccountRunnable, OrderResult.class);
+        // Nothing trades outside market hours, so the account only needs an occasional reload then.
+        final MarketSchedule accountSchedule = new MarketSchedule(() -> getMarketPhase(new DateTime()))
+                .withPeriod(MarketPhase.REGULAR_HOURS, BROKER_ACCOUNT_REGULAR_HOURS_SECONDS, TimeUnit.SECONDS)
+                .withPeriod(MarketPhase.AFTER_HOURS, BROKER_ACCOUNT_AFTER_HOURS_SECONDS, TimeUnit.SECONDS)
+                .withPeriod(MarketPhase.OFF_HOURS, BROKER_ACCOUNT_OFF_HOURS_SECONDS, TimeUnit.SECONDS)
+                .withPeriod(MarketPhase.CLOSED, BROKER_ACCOUNT_CLOSED_SECONDS, TimeUnit.SECONDS)
+                .withStartJitter(10, TimeUnit.SECONDS);
+        // A slow reload shouldn't be followed straight away by another one.
+        scheduler.scheduleJob(updateAccountRunnable, accountSchedule, OverrunPolicy.SKIP);
+        // A burst of order results only needs one reload once it settles.
+        pubSub.subscribeCoalescingRunnableToClassType(updateAccountRunnable, OrderResult.class, 500, 2000, TimeUnit.MILLISECONDS);
     }
 
     public Quote getQuoteForSymbol(final String symbol) throws ExecutionException {
@@ -151,6 +169,21 @@ public class BrokerCache {
         }
     }
 
+    public MarketPhase getMarketPhase(final DateTime forDate) {
+        final MarketState marketState = getMarketState(forDate);
+
+        if (!marketState.isOpenThisDay()) {
+            return MarketPhase.CLOSED;
+        }
+        if (marketState.isOpenNow()) {
+            return MarketPhase.REGULAR_HOURS;
+        }
+        if (marketState.isAfterHoursNow()) {
+            return MarketPhase.AFTER_HOURS;
+        }
+        return MarketPhase.OFF_HOURS;
+    }
+
     public double getAccountTotalAssets() {
         return assets.stream().mapToDouble(asset -> assetComputer.computeAssetValue(asset)).sum();
     }
@@ -1,24 +1,39 @@
 package stockstream.cache;
 
 import com.google.common.collect.ImmutableSet;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import stockstream.database.InstrumentRegistry;
 import stockstream.database.InstrumentStub;
 import stockstream.logic.Scheduler;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class InstrumentCache {
     private static final Set<String> RESTRICTED_SYMBOLS = ImmutableSet.of();
 
-    private final Set<String> validSymbols = ConcurrentHashMap.newKeySet();
-    private final Map<String, InstrumentStub> urlToInstrument = new ConcurrentHashMap<>();
-    private final Map<String, InstrumentStub> symbolToInstrument = new ConcurrentHashMap<>();
+    private static final String INSTRUMENT_SNAPSHOT_FILE = System.getenv().getOrDefault("INSTRUMENT_SNAPSHOT_FILE", new File(System.getProperty("java.io.tmpdir"), "stockstream-instruments.bin").getPath());
+
+    // Rows written within this long of the watermark are fetched again, in case a slower writer committed them late.
+    private static final long WATERMARK_OVERLAP_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Replaced whole on every reload, never modified.
+    private volatile InstrumentIndex instrumentIndex = InstrumentIndex.EMPTY;
+
+    // Every row seen so far, including ones the index filters out, so a delta can flip an instrument either way.
+    private final Map<String, InstrumentStub> loadedInstruments = new HashMap<>();
+    private long updatedAtWatermark = 0;
+    private boolean fullyLoaded = false;
+
+    @Setter
+    private InstrumentSnapshotFile instrumentSnapshotFile = new InstrumentSnapshotFile(new File(INSTRUMENT_SNAPSHOT_FILE));
 
     @Autowired
     private InstrumentRegistry instrumentRegistry;
@@ -28,51 +43,121 @@ public class InstrumentCache {
 
     @PostConstruct
     public void init() {
-        scheduler.scheduleJob(this::loadRemoteInstruments, 0, 1, TimeUnit.HOURS);
+        loadSnapshotInstruments();
+
+        // Load right away, then reload hourly on a jittered phase so nodes started together don't reload together.
+        scheduler.scheduleJob(this::loadRemoteInstruments, new DateTime());
+        scheduler.scheduleJob(this::loadRemoteInstruments, 60, 60, TimeUnit.MINUTES, 10);
+
+        // Deltas never see rows deleted or written with a stale updated_at, a daily full load puts those right.
+        scheduler.scheduleJob(this::resyncInstruments, 24, 24, TimeUnit.HOURS, 1);
     }
 
-    private void loadRemoteInstruments() {
-        final List<InstrumentStub> instruments = this.instrumentRegistry.getAllInstrumentStubs();
+    /**
+     * Serves the snapshot from the last run until the database answers. The snapshot may be stale or from another
+     * deploy, so the first database load is still a full one and replaces it; only loads after that are deltas.
+     */
+    private synchronized void loadSnapshotInstruments() {
+        try {
+            final Optional<InstrumentSnapshotFile.Snapshot> snapshot = instrumentSnapshotFile.read();
+            if (!snapshot.isPresent() || snapshot.get().getInstruments().isEmpty()) {
+                return;
+            }
+
+            snapshot.get().getInstruments().forEach(instrument -> loadedInstruments.put(instrument.getUrl(), instrument));
+            updatedAtWatermark = snapshot.get().getUpdatedAtWatermark();
 
-        updateSymbolMaps(instruments);
+            updateSymbolMaps(loadedInstruments.values());
 
-        log.info("InstrumentsCache constructed.");
+            log.info("InstrumentsCache loaded {} instruments from {}, watermark {}.", loadedInstruments.size(), instrumentSnapshotFile.getFile(), updatedAtWatermark);
+        } catch (final IOException e) {
+            log.warn(e.getMessage(), e);
+        }
     }
 
-    private synchronized void updateSymbolMaps(final Collection<InstrumentStub> withInstruments) {
-        validSymbols.clear();
-        urlToInstrument.clear();
-        symbolToInstrument.clear();
+    private synchronized void loadRemoteInstruments() {
+        loadRemoteInstruments(!fullyLoaded);
+    }
 
-        withInstruments.forEach(instrument -> {
-            if (RESTRICTED_SYMBOLS.contains(instrument.getSymbol())) {
-                log.debug("Ignoring instrument {} because it's restricted.", instrument);
-                return;
-            }
-            if (instrument.getDay_trade_ratio() > .25f) {
-                log.debug("Ignoring instrument {} because it's too risky.", instrument);
-                return;
-            }
-            if (!instrument.isTradeable()) {
-                log.debug("Ignoring instrument {} because it's not tradeable.", instrument);
-                return;
+    private synchronized void resyncInstruments() {
+        loadRemoteInstruments(true);
+    }
+
+    private void loadRemoteInstruments(final boolean fullLoad) {
+        final List<InstrumentStub> instruments = fullLoad
+                ? this.instrumentRegistry.getAllInstrumentStubs()
+                : this.instrumentRegistry.getInstrumentStubsUpdatedSince(updatedAtWatermark - WATERMARK_OVERLAP_MILLIS);
+
+        if (!fullLoad && instruments.isEmpty()) {
+            log.debug("No instruments changed since {}.", updatedAtWatermark);
+            return;
+        }
+
+        // A full load replaces everything, so rows deleted since the last one go too. An empty one is kept out, see updateSymbolMaps.
+        if (fullLoad && !instruments.isEmpty()) {
+            loadedInstruments.clear();
+            updatedAtWatermark = 0;
+        }
+
+        for (final InstrumentStub instrument : instruments) {
+            loadedInstruments.put(instrument.getUrl(), instrument);
+            if (instrument.getUpdated_at() != null) {
+                updatedAtWatermark = Math.max(updatedAtWatermark, instrument.getUpdated_at());
             }
-            validSymbols.add(instrument.getSymbol());
-            urlToInstrument.put(instrument.getUrl(), instrument);
-            symbolToInstrument.put(instrument.getSymbol(), instrument);
-        });
+        }
+
+        updateSymbolMaps(loadedInstruments.values());
+
+        log.info("InstrumentsCache {} with {} instruments, watermark {}.", fullLoad ? "constructed" : "updated", instruments.size(), updatedAtWatermark);
+
+        // An empty full load is retried in full, the legacy rows without updated_at would never show up in a delta. That
+        // holds with a snapshot loaded too, its rows didn't come from this database load.
+        fullyLoaded = fullyLoaded || (fullLoad && !instruments.isEmpty());
+        if (instruments.isEmpty()) {
+            return;
+        }
+
+        try {
+            instrumentSnapshotFile.write(loadedInstruments.values(), updatedAtWatermark);
+        } catch (final IOException e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    public synchronized long getUpdatedAtWatermark() {
+        return updatedAtWatermark;
+    }
+
+    private void updateSymbolMaps(final Collection<InstrumentStub> withInstruments) {
+        final InstrumentIndex updatedIndex = InstrumentIndex.build(withInstruments, RESTRICTED_SYMBOLS);
+
+        // An empty load is almost certainly a failed one, rejecting every symbol until the next reload would be worse.
+        if (updatedIndex.isEmpty() && !instrumentIndex.isEmpty()) {
+            log.warn("Ignoring instrument reload with no valid symbols, keeping the {} already loaded.", instrumentIndex.getValidSymbols().size());
+            return;
+        }
+
+        instrumentIndex = updatedIndex;
+    }
+
+    public InstrumentIndex getInstrumentIndex() {
+        return instrumentIndex;
+    }
+
+    public SymbolDictionary getSymbolDictionary() {
+        return instrumentIndex.getSymbolDictionary();
     }
 
     public Set<String> getValidSymbols() {
-        return Collections.unmodifiableSet(validSymbols);
+        return instrumentIndex.getValidSymbols();
     }
 
     public Map<String, InstrumentStub> getUrlToInstrument() {
-        return Collections.unmodifiableMap(urlToInstrument);
+        return instrumentIndex.getUrlToInstrument();
     }
 
     public Map<String, InstrumentStub> getSymbolToInstrument() {
-        return Collections.unmodifiableMap(symbolToInstrument);
+        return instrumentIndex.getSymbolToInstrument();
     }
 
 }
@@ -0,0 +1,70 @@
+package stockstream.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import stockstream.database.InstrumentStub;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable lookup tables for the instruments we allow trading in. InstrumentCache builds a new one per reload and swaps
+ * it in whole, so readers always see one complete index.
+ */
+@Slf4j
+@Getter
+public class InstrumentIndex {
+
+    public static final InstrumentIndex EMPTY = new InstrumentIndex(ImmutableSet.of(), ImmutableMap.of(), ImmutableMap.of(), SymbolDictionary.EMPTY);
+
+    private final Set<String> validSymbols;
+    private final Map<String, InstrumentStub> urlToInstrument;
+    private final Map<String, InstrumentStub> symbolToInstrument;
+    private final SymbolDictionary symbolDictionary;
+
+    private InstrumentIndex(final Set<String> validSymbols,
+                            final Map<String, InstrumentStub> urlToInstrument,
+                            final Map<String, InstrumentStub> symbolToInstrument,
+                            final SymbolDictionary symbolDictionary) {
+        this.validSymbols = validSymbols;
+        this.urlToInstrument = urlToInstrument;
+        this.symbolToInstrument = symbolToInstrument;
+        this.symbolDictionary = symbolDictionary;
+    }
+
+    public static InstrumentIndex build(final Collection<InstrumentStub> instruments, final Set<String> restrictedSymbols) {
+        final Map<String, InstrumentStub> urlToInstrument = new HashMap<>();
+        final Map<String, InstrumentStub> symbolToInstrument = new HashMap<>();
+
+        instruments.forEach(instrument -> {
+            if (restrictedSymbols.contains(instrument.getSymbol())) {
+                log.debug("Ignoring instrument {} because it's restricted.", instrument);
+                return;
+            }
+            if (instrument.getDay_trade_ratio() > .25f) {
+                log.debug("Ignoring instrument {} because it's too risky.", instrument);
+                return;
+            }
+            if (!instrument.isTradeable()) {
+                log.debug("Ignoring instrument {} because it's not tradeable.", instrument);
+                return;
+            }
+            urlToInstrument.put(instrument.getUrl(), instrument);
+            symbolToInstrument.put(instrument.getSymbol(), instrument);
+        });
+
+        return new InstrumentIndex(ImmutableSet.copyOf(symbolToInstrument.keySet()),
+                                   ImmutableMap.copyOf(urlToInstrument),
+                                   ImmutableMap.copyOf(symbolToInstrument),
+                                   SymbolDictionary.of(symbolToInstrument.values()));
+    }
+
+    public boolean isEmpty() {
+        return validSymbols.isEmpty();
+    }
+
+}
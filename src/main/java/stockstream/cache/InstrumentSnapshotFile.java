@@ -0,0 +1,113 @@
+package stockstream.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import stockstream.database.InstrumentStub;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The last instrument universe InstrumentCache loaded, kept on local disk so a restart can validate symbols before the
+ * database answers. Files are written to a temporary sibling and moved into place, so a reader never sees half a file.
+ */
+public class InstrumentSnapshotFile {
+
+    private static final int MAGIC = 0x494E5354; // "INST"
+    private static final int VERSION = 1;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final List<InstrumentStub> instruments;
+        private final long updatedAtWatermark;
+    }
+
+    @Getter
+    private final File file;
+
+    public InstrumentSnapshotFile(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns empty when there is no snapshot yet, and throws when there is one that can't be read.
+     */
+    public Optional<Snapshot> read() throws IOException {
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int magic = input.readInt();
+            if (magic != MAGIC) {
+                throw new IOException(String.format("%s is not an instrument snapshot.", file));
+            }
+            final int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s has snapshot version %s, expected %s.", file, version, VERSION));
+            }
+
+            final long updatedAtWatermark = input.readLong();
+            final int count = input.readInt();
+            final List<InstrumentStub> instruments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                instruments.add(new InstrumentStub(input.readUTF(),
+                                                   readNullableString(input),
+                                                   readNullableString(input),
+                                                   input.readFloat(),
+                                                   input.readBoolean(),
+                                                   input.readFloat(),
+                                                   input.readBoolean() ? input.readLong() : null));
+            }
+
+            return Optional.of(new Snapshot(instruments, updatedAtWatermark));
+        }
+    }
+
+    public void write(final Collection<InstrumentStub> instruments, final long updatedAtWatermark) throws IOException {
+        final Path snapshotPath = file.toPath();
+        final Path temporaryPath = new File(file.getPath() + ".tmp").toPath();
+
+        Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+
+        try (final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(updatedAtWatermark);
+            output.writeInt(instruments.size());
+            for (final InstrumentStub instrument : instruments) {
+                output.writeUTF(instrument.getUrl());
+                writeNullableString(output, instrument.getSymbol());
+                writeNullableString(output, instrument.getName());
+                output.writeFloat(instrument.getDay_trade_ratio());
+                output.writeBoolean(instrument.isTradeable());
+                output.writeFloat(instrument.getMin_tick_size());
+                output.writeBoolean(instrument.getUpdated_at() != null);
+                if (instrument.getUpdated_at() != null) {
+                    output.writeLong(instrument.getUpdated_at());
+                }
+            }
+        }
+
+        Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readNullableString(final DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullableString(final DataOutputStream output, final String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package stockstream.cache;
+
+import stockstream.database.InstrumentStub;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Assigns each instrument a dense int id and resolves symbols and urls to those ids by binary search over sorted char
+ * arrays, so a token can be checked straight out of a chat message without cutting a substring first.
+ */
+public class SymbolDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    public static final SymbolDictionary EMPTY = of(Collections.emptyList());
+
+    // Indexed by id, ids are assigned in symbol order so the symbol table needs no separate id column.
+    private final char[][] symbols;
+    private final InstrumentStub[] instruments;
+
+    private final char[][] urls;
+    private final int[] urlIds;
+
+    private SymbolDictionary(final InstrumentStub[] instruments) {
+        this.instruments = instruments;
+        this.symbols = new char[instruments.length][];
+        for (int id = 0; id < instruments.length; id++) {
+            symbols[id] = instruments[id].getSymbol().toCharArray();
+        }
+
+        final Integer[] byUrl = new Integer[instruments.length];
+        for (int id = 0; id < instruments.length; id++) {
+            byUrl[id] = id;
+        }
+        Arrays.sort(byUrl, Comparator.comparing(id -> instruments[id].getUrl()));
+
+        this.urls = new char[instruments.length][];
+        this.urlIds = new int[instruments.length];
+        for (int i = 0; i < byUrl.length; i++) {
+            urls[i] = instruments[byUrl[i]].getUrl().toCharArray();
+            urlIds[i] = byUrl[i];
+        }
+    }
+
+    /**
+     * Builds a dictionary over the given instruments. Later instruments win when two share a symbol, matching how the
+     * instrument maps are filled.
+     */
+    public static SymbolDictionary of(final Collection<InstrumentStub> withInstruments) {
+        final Map<String, InstrumentStub> symbolToInstrument = new LinkedHashMap<>();
+        withInstruments.forEach(instrument -> symbolToInstrument.put(instrument.getSymbol(), instrument));
+
+        final InstrumentStub[] sorted = symbolToInstrument.values().toArray(new InstrumentStub[0]);
+        Arrays.sort(sorted, Comparator.comparing(InstrumentStub::getSymbol));
+
+        return new SymbolDictionary(sorted);
+    }
+
+    public int size() {
+        return instruments.length;
+    }
+
+    public boolean contains(final CharSequence symbol) {
+        return getId(symbol) != NOT_FOUND;
+    }
+
+    public boolean contains(final CharSequence text, final int start, final int end) {
+        return getId(text, start, end) != NOT_FOUND;
+    }
+
+    public int getId(final CharSequence symbol) {
+        return getId(symbol, 0, symbol.length());
+    }
+
+    /**
+     * Returns the id of the symbol spelled by text[start, end), or NOT_FOUND.
+     */
+    public int getId(final CharSequence text, final int start, final int end) {
+        return search(symbols, text, start, end);
+    }
+
+    public int getIdForUrl(final CharSequence url) {
+        final int index = search(urls, url, 0, url.length());
+        return index == NOT_FOUND ? NOT_FOUND : urlIds[index];
+    }
+
+    public String getSymbol(final int id) {
+        return instruments[id].getSymbol();
+    }
+
+    public InstrumentStub getInstrument(final int id) {
+        return instruments[id];
+    }
+
+    private static int search(final char[][] table, final CharSequence text, final int start, final int end) {
+        int low = 0;
+        int high = table.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int comparison = compare(table[mid], text, start, end);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    // Same ordering as String.compareTo, so it agrees with the sort above.
+    private static int compare(final char[] entry, final CharSequence text, final int start, final int end) {
+        final int length = end - start;
+        final int limit = Math.min(entry.length, length);
+        for (int i = 0; i < limit; i++) {
+            final char a = entry[i];
+            final char b = text.charAt(start + i);
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return entry.length - length;
+    }
+
+}
@@ -103,12 +103,9 @@ public class AssetComputer {
     }
 
     public boolean isSymbol(final String token) {
-        String tokenToCheck = token;
-        if (tokenToCheck.startsWith("$")) {
-            tokenToCheck = tokenToCheck.substring(1);
-        }
+        final int start = token.startsWith("$") ? 1 : 0;
 
-        return this.instrumentCache.getValidSymbols().contains(tokenToCheck);
+        return this.instrumentCache.getSymbolDictionary().contains(token, start, token.length());
     }
 
     public List<Position> getWalletOwnedPositions(final String symbol, final String playerId) {
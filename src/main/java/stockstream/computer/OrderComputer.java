@@ -53,7 +53,7 @@ public class OrderComputer {
     private InstrumentCache instrumentCache;
 
     public OrderStatus preProcessTradeCommand(final TradeCommand tradeCommand, final Set<Voter> voters) throws RobinhoodException, ExecutionException {
-        if (!instrumentCache.getValidSymbols().contains(tradeCommand.getParameter())) {
+        if (!instrumentCache.getSymbolDictionary().contains(tradeCommand.getParameter())) {
             return OrderStatus.BAD_TICKER;
         }
 
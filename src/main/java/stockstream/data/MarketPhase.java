@@ -0,0 +1,10 @@
+package stockstream.data;
+
+public enum MarketPhase {
+    REGULAR_HOURS,
+    AFTER_HOURS,
+    // A trading day, but outside both regular and after hours.
+    OFF_HOURS,
+    // Weekends and market holidays.
+    CLOSED
+}
@@ -1,35 +1,63 @@
 package stockstream.database;
 
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import stockstream.logic.elections.Election;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Slf4j
 @Repository
 @Transactional
 public class ElectionRegistry {
 
+    private static final int BUFFER_SIZE = 1000;
+    private static final boolean ELECTION_VOTE_MIGRATE_ON_STARTUP = Boolean.valueOf(System.getenv().getOrDefault("ELECTION_VOTE_MIGRATE_ON_STARTUP", "false"));
+
     @Autowired
     private SessionFactory sessionFactory;
 
+    @PostConstruct
+    public void init() {
+        if (ELECTION_VOTE_MIGRATE_ON_STARTUP) {
+            final Thread migration = new Thread(this::migrateElectionVotesQuietly, "election-vote-migration");
+            migration.setDaemon(true);
+            migration.start();
+        }
+    }
+
+    private void migrateElectionVotesQuietly() {
+        try {
+            migrateElectionVotes();
+        } catch (final Exception ex) {
+            log.warn(ex.getMessage(), ex);
+        }
+    }
+
     @Transactional
     public void saveElectionStubs(final Collection<ElectionStub> electionStubs) {
         if (CollectionUtils.isEmpty(electionStubs)) {
             return;
         }
         final Session session = sessionFactory.getCurrentSession();
-        electionStubs.forEach(session::saveOrUpdate);
+
+        for (final List<ElectionStub> stubPartition : Lists.partition(new ArrayList<>(electionStubs), BUFFER_SIZE)) {
+            stubPartition.forEach(session::saveOrUpdate);
+            session.flush();
+            session.clear();
+        }
     }
 
     @Transactional
@@ -38,21 +66,89 @@ public class ElectionRegistry {
             return;
         }
         final Session session = sessionFactory.getCurrentSession();
-        electionVoteStubs.forEach(session::saveOrUpdate);
+
+        for (final List<ElectionVoteStub> votePartition : Lists.partition(new ArrayList<>(electionVoteStubs), BUFFER_SIZE)) {
+            votePartition.forEach(session::saveOrUpdate);
+            session.flush();
+            session.clear();
+        }
     }
 
+    // Snapshots every election first, then saves all of them in this one transaction.
     @Transactional
     public void archiveElections(final Collection<Election<?>> elections) {
-        final Set<ElectionStub> electionStubs = new HashSet<>();
+        final List<ElectionStub> electionStubs = new ArrayList<>(elections.size());
 
-        int rank = 0;
         for (final Election<?> election : elections) {
-            electionStubs.add(new ElectionStub(election));
+            electionStubs.add(new ElectionStub(election.snapshot()));
         }
 
         saveElectionStubs(electionStubs);
     }
 
+    /**
+     * Rewrites ElectionVotes rows still in the old JSON format into the compact encoding, BUFFER_SIZE rows at a time
+     * in voteId order. Each batch commits in its own transaction, so the live table is only ever locked for one batch,
+     * and a run that stops part way keeps what it committed. Rows already migrated are left alone, so it's safe to run
+     * again. Returns the rows rewritten.
+     *
+     * Only runs once ELECTION_VOTE_COMPACT_VOTERS is on, see ElectionVoteCodec. Set ELECTION_VOTE_MIGRATE_ON_STARTUP=true
+     * on one node to run it in the background at startup.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int migrateElectionVotes() {
+        if (!ElectionVoteCodec.isCompactVotersEnabled()) {
+            log.warn("Not migrating election votes, older nodes may still need the JSON format until ELECTION_VOTE_COMPACT_VOTERS is on.");
+            return 0;
+        }
+
+        String lastVoteId = "";
+        int totalMigrated = 0;
+        int totalUnreadable = 0;
+
+        while (true) {
+            final List<ElectionVoteStub> voteStubs;
+
+            try (final Session session = sessionFactory.openSession()) {
+                final Transaction transaction = session.beginTransaction();
+                try {
+                    final Query query = session.createQuery("FROM ElectionVoteStub WHERE voteId > :lastVoteId ORDER BY voteId");
+                    query.setParameter("lastVoteId", lastVoteId);
+                    query.setMaxResults(BUFFER_SIZE);
+
+                    @SuppressWarnings("unchecked")
+                    final List<ElectionVoteStub> batch = (List<ElectionVoteStub>) query.list();
+                    voteStubs = batch;
+
+                    for (final ElectionVoteStub voteStub : voteStubs) {
+                        if (!ElectionVoteCodec.isLegacy(voteStub)) {
+                            continue;
+                        }
+                        if (ElectionVoteCodec.reencode(voteStub)) {
+                            ++totalMigrated;
+                        } else {
+                            ++totalUnreadable;
+                        }
+                    }
+
+                    transaction.commit();
+                } catch (final RuntimeException ex) {
+                    transaction.rollback();
+                    throw ex;
+                }
+            }
+
+            if (voteStubs.isEmpty()) {
+                break;
+            }
+            lastVoteId = voteStubs.get(voteStubs.size() - 1).getVoteId();
+            log.info("Migrated {} election votes so far.", totalMigrated);
+        }
+
+        log.info("Migrated {} election votes, {} could not be read.", totalMigrated, totalUnreadable);
+        return totalMigrated;
+    }
+
     public Collection<ElectionVoteStub> getElectionVotes(final String electionId) {
         final Session session = sessionFactory.getCurrentSession();
 
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import stockstream.logic.elections.Election;
+import stockstream.logic.elections.ElectionSnapshot;
 import stockstream.util.JSONUtil;
 
 import javax.persistence.Column;
@@ -57,22 +58,22 @@ public class ElectionStub {
     }
 
     public ElectionStub(final Election<?> election) {
-        this.topic = election.getTopic();
-        this.expirationDate = election.getExpirationDate();
-        this.rank = election.getRank();
+        this(election.snapshot());
+    }
 
-        final Map<String, Integer> polls = new HashMap<>();
+    public ElectionStub(final ElectionSnapshot<?> snapshot) {
+        this.topic = snapshot.getTopic();
+        this.expirationDate = snapshot.getExpirationDate();
+        this.rank = snapshot.getRank();
 
-        election.getCandidateToVoters().forEach((key, value) -> {
-            final String objectStr = JSONUtil.serializeObject(key).get();
-            polls.computeIfAbsent(objectStr, val -> value.size());
-        });
+        // Each candidate is serialized once, polls and candidates share the result.
+        final Map<Object, String> candidateToJson = new HashMap<>();
+        snapshot.getCandidates().forEach(candidate -> candidateToJson.put(candidate, JSONUtil.serializeObject(candidate).orElse("{}")));
 
-        final Set<String> candidates = new HashSet<>();
-        election.getCandidateToVoters().keySet().forEach(key -> candidates.add(JSONUtil.serializeObject(key).orElse("{}")));
-        election.getCandidateToRunnable().keySet().forEach(key -> candidates.add(JSONUtil.serializeObject(key).orElse("{}")));
+        final Map<String, Integer> polls = new HashMap<>();
+        snapshot.getCandidateToVoteCount().forEach((candidate, voteCount) -> polls.putIfAbsent(candidateToJson.get(candidate), voteCount));
 
         setPolls(polls);
-        setCandidates(candidates);
+        setCandidates(new HashSet<>(candidateToJson.values()));
     }
 }
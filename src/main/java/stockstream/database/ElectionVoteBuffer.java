@@ -0,0 +1,164 @@
+package stockstream.database;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for election votes. Votes are held by voteId, so a player who changes their mind before the next
+ * flush only costs one write, and are saved in batches once ELECTION_VOTE_BUFFER_SIZE are waiting or every
+ * ELECTION_VOTE_FLUSH_MILLIS. Anything that needs the votes in the database must call flush() first.
+ */
+@Slf4j
+@Component
+public class ElectionVoteBuffer {
+
+    private static final int ELECTION_VOTE_BUFFER_SIZE = Integer.valueOf(System.getenv().getOrDefault("ELECTION_VOTE_BUFFER_SIZE", "500"));
+    private static final long ELECTION_VOTE_FLUSH_MILLIS = Long.valueOf(System.getenv().getOrDefault("ELECTION_VOTE_FLUSH_MILLIS", "250"));
+
+    // A vote that fails this many saves on its own is dropped, so one bad row can't keep every later flush failing.
+    private static final int ELECTION_VOTE_MAX_ATTEMPTS = Integer.valueOf(System.getenv().getOrDefault("ELECTION_VOTE_MAX_ATTEMPTS", "3"));
+
+    // Past this many waiting votes the voters themselves flush, so a slow database slows chat down instead of growing the buffer.
+    private static final int MAX_PENDING_VOTES = ELECTION_VOTE_BUFFER_SIZE * 4;
+
+    @Autowired
+    private ElectionRegistry electionRegistry;
+
+    private final ScheduledExecutorService flushExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("election-vote-flush-%d").setDaemon(true).build());
+
+    // Guarded by this.
+    private Map<String, ElectionVoteStub> pendingVotes = new LinkedHashMap<>();
+    private final Map<String, Integer> failedAttempts = new HashMap<>();
+
+    // Held for the whole of a flush, so a flush returns only once every earlier vote has been written.
+    private final Object flushLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, ELECTION_VOTE_FLUSH_MILLIS, ELECTION_VOTE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushQuietly();
+    }
+
+    public void addVote(final ElectionVoteStub electionVoteStub) {
+        final int pendingCount;
+        synchronized (this) {
+            pendingVotes.put(electionVoteStub.getVoteId(), electionVoteStub);
+            failedAttempts.remove(electionVoteStub.getVoteId());
+            pendingCount = pendingVotes.size();
+        }
+
+        // The vote is buffered either way, so a failed flush here is only logged and the next one retries it.
+        if (pendingCount >= MAX_PENDING_VOTES) {
+            flushQuietly();
+        } else if (pendingCount == ELECTION_VOTE_BUFFER_SIZE) {
+            flushExecutor.execute(this::flushQuietly);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingVotes.size();
+    }
+
+    /**
+     * Saves every waiting vote. If the batch fails, its votes are saved one at a time to find the bad ones. A vote
+     * that fails on its own goes back into the buffer, behind any newer vote from the same player, until it has failed
+     * ELECTION_VOTE_MAX_ATTEMPTS times and is dropped. When no vote could be saved at all the exception is thrown to the
+     * caller, and a batch where every vote failed is taken as the database being down and doesn't count as attempts.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final List<ElectionVoteStub> votes;
+            synchronized (this) {
+                if (pendingVotes.isEmpty()) {
+                    return;
+                }
+                votes = new ArrayList<>(pendingVotes.values());
+                pendingVotes = new LinkedHashMap<>();
+            }
+
+            try {
+                electionRegistry.saveElectionVotes(votes);
+                clearFailedAttempts(votes);
+            } catch (final RuntimeException ex) {
+                final List<ElectionVoteStub> failedVotes = votes.size() > 1 ? saveIndividually(votes) : votes;
+                final boolean databaseDown = votes.size() > 1 && failedVotes.size() == votes.size();
+
+                requeue(databaseDown ? votes : countFailedAttempts(failedVotes, ex));
+
+                if (failedVotes.size() == votes.size()) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private List<ElectionVoteStub> saveIndividually(final List<ElectionVoteStub> votes) {
+        final List<ElectionVoteStub> failedVotes = new ArrayList<>();
+        for (final ElectionVoteStub vote : votes) {
+            try {
+                electionRegistry.saveElectionVotes(ImmutableList.of(vote));
+                clearFailedAttempts(ImmutableList.of(vote));
+            } catch (final RuntimeException ex) {
+                failedVotes.add(vote);
+            }
+        }
+        return failedVotes;
+    }
+
+    // Returns the votes that may still be retried.
+    private synchronized List<ElectionVoteStub> countFailedAttempts(final List<ElectionVoteStub> failedVotes, final RuntimeException cause) {
+        final List<ElectionVoteStub> retryVotes = new ArrayList<>();
+        for (final ElectionVoteStub vote : failedVotes) {
+            final int attempts = failedAttempts.merge(vote.getVoteId(), 1, Integer::sum);
+            if (attempts >= ELECTION_VOTE_MAX_ATTEMPTS) {
+                failedAttempts.remove(vote.getVoteId());
+                log.warn("Dropping vote {} after {} failed saves: {}", vote, attempts, cause.getMessage(), cause);
+            } else {
+                retryVotes.add(vote);
+            }
+        }
+        return retryVotes;
+    }
+
+    private synchronized void clearFailedAttempts(final List<ElectionVoteStub> savedVotes) {
+        if (!failedAttempts.isEmpty()) {
+            savedVotes.forEach(vote -> failedAttempts.remove(vote.getVoteId()));
+        }
+    }
+
+    private synchronized void requeue(final List<ElectionVoteStub> votes) {
+        final Map<String, ElectionVoteStub> requeuedVotes = new LinkedHashMap<>();
+        votes.forEach(vote -> requeuedVotes.put(vote.getVoteId(), vote));
+        requeuedVotes.putAll(pendingVotes);
+        pendingVotes = requeuedVotes;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final Exception ex) {
+            log.warn(ex.getMessage(), ex);
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package stockstream.database;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import stockstream.data.Voter;
+import stockstream.util.JSONUtil;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compact column encodings for ElectionVoteStub. A voter key is v1|username|platform|channel|0 or 1 for subscriber,
+ * with \ and | escaped by a backslash. A candidate is single-line JSON of its settable properties only, so derived
+ * getters such as getLabel() aren't stored; older nodes still read it as JSON.
+ *
+ * Nodes from before this codec can't read voter keys, so rolling it out takes two deploys. The first only teaches every
+ * node to read both formats and keeps writing JSON voters. Once no older node is left, the second sets
+ * ELECTION_VOTE_COMPACT_VOTERS=true to write voter keys, and ElectionRegistry.migrateElectionVotes can then rewrite the
+ * old rows.
+ *
+ * Elections only ever see a few distinct candidates, so a caller decoding many rows can pass a map to share decoded
+ * candidates by their encoding. Candidates are mutable, so that map must not outlive one election's tally.
+ */
+@Slf4j
+public class ElectionVoteCodec {
+
+    private static final boolean ELECTION_VOTE_COMPACT_VOTERS = Boolean.valueOf(System.getenv().getOrDefault("ELECTION_VOTE_COMPACT_VOTERS", "false"));
+
+    private static final String VOTER_KEY_PREFIX = "v1|";
+    private static final char SEPARATOR = '|';
+    private static final char ESCAPE = '\\';
+
+    private static final ObjectWriter compactWriter = JSONUtil.objectMapper.copy()
+            .configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true)
+            .writer()
+            .without(SerializationFeature.INDENT_OUTPUT);
+
+    public static boolean isCompactVotersEnabled() {
+        return ELECTION_VOTE_COMPACT_VOTERS;
+    }
+
+    // Writes whichever voter format the rollout is at, see the class comment.
+    public static String encodeVoter(final Voter voter) {
+        if (!ELECTION_VOTE_COMPACT_VOTERS) {
+            return JSONUtil.serializeObject(voter).orElse("{}");
+        }
+        return encodeVoterKey(voter);
+    }
+
+    public static String encodeVoterKey(final Voter voter) {
+        final StringBuilder builder = new StringBuilder(VOTER_KEY_PREFIX);
+        appendEscaped(builder, voter.getUsername()).append(SEPARATOR);
+        appendEscaped(builder, voter.getPlatform()).append(SEPARATOR);
+        appendEscaped(builder, voter.getChannel()).append(SEPARATOR);
+        return builder.append(voter.isSubscriber() ? '1' : '0').toString();
+    }
+
+    public static Optional<Voter> decodeVoter(final String encodedVoter) {
+        if (encodedVoter == null) {
+            return Optional.empty();
+        }
+        if (!encodedVoter.startsWith(VOTER_KEY_PREFIX)) {
+            return JSONUtil.deserializeObject(encodedVoter, Voter.class);
+        }
+
+        final String[] fields = new String[4];
+        final StringBuilder field = new StringBuilder();
+        int fieldIndex = 0;
+        for (int i = VOTER_KEY_PREFIX.length(); i < encodedVoter.length(); ++i) {
+            final char c = encodedVoter.charAt(i);
+            if (c == ESCAPE && i + 1 < encodedVoter.length()) {
+                field.append(encodedVoter.charAt(++i));
+            } else if (c == SEPARATOR && fieldIndex < fields.length - 1) {
+                fields[fieldIndex++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields[fieldIndex] = field.toString();
+
+        if (fieldIndex != fields.length - 1) {
+            log.warn("Could not decode voter {}", encodedVoter);
+            return Optional.empty();
+        }
+        return Optional.of(new Voter(emptyToNull(fields[0]), emptyToNull(fields[1]), emptyToNull(fields[2]), "1".equals(fields[3])));
+    }
+
+    public static String encodeCandidate(final Object candidate) {
+        try {
+            return compactWriter.writeValueAsString(candidate);
+        } catch (final JsonProcessingException ex) {
+            log.warn(ex.getMessage(), ex);
+            return "{}";
+        }
+    }
+
+    public static <T> Optional<T> decodeCandidate(final String encodedCandidate, final Class<T> candidateClassType) {
+        if (encodedCandidate == null) {
+            return Optional.empty();
+        }
+        return JSONUtil.deserializeObject(encodedCandidate, candidateClassType);
+    }
+
+    // Decodes each distinct encoding once, handing out the same instance for equal encodings within decodedCandidates.
+    public static <T> Optional<T> decodeCandidate(final String encodedCandidate,
+                                                  final Class<T> candidateClassType,
+                                                  final Map<String, Optional<T>> decodedCandidates) {
+        if (encodedCandidate == null) {
+            return Optional.empty();
+        }
+        return decodedCandidates.computeIfAbsent(encodedCandidate, encoded -> decodeCandidate(encoded, candidateClassType));
+    }
+
+    // Rewrites a row in the compact encoding, false if its old contents can't be read.
+    public static boolean reencode(final ElectionVoteStub electionVoteStub) {
+        final Optional<Voter> voter = decodeVoter(electionVoteStub.getVoterObject());
+        final Optional<JsonNode> candidate = JSONUtil.deserializeObject(electionVoteStub.getVoteObject(), JsonNode.class);
+
+        if (!voter.isPresent() || !candidate.isPresent()) {
+            return false;
+        }
+
+        electionVoteStub.setVoterObject(encodeVoterKey(voter.get()));
+        electionVoteStub.setVoteObject(encodeCandidate(candidate.get()));
+        return true;
+    }
+
+    // True for rows written before the compact encoding.
+    public static boolean isLegacy(final ElectionVoteStub electionVoteStub) {
+        return electionVoteStub.getVoterObject() == null
+                || !electionVoteStub.getVoterObject().startsWith(VOTER_KEY_PREFIX)
+                || (electionVoteStub.getVoteObject() != null && electionVoteStub.getVoteObject().indexOf('\n') >= 0);
+    }
+
+    private static StringBuilder appendEscaped(final StringBuilder builder, final String value) {
+        if (value == null) {
+            return builder;
+        }
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c == SEPARATOR || c == ESCAPE) {
+                builder.append(ESCAPE);
+            }
+            builder.append(c);
+        }
+        return builder;
+    }
+
+    private static String emptyToNull(final String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+}
@@ -4,7 +4,6 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import stockstream.data.Voter;
-import stockstream.util.JSONUtil;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -35,7 +34,7 @@ public class ElectionVoteStub {
     private String voterObject;
 
     public ElectionVoteStub(final Voter voter, final Object vote, final String electionId) {
-        this(voter, JSONUtil.serializeObject(vote).orElse("{}"), electionId);
+        this(voter, ElectionVoteCodec.encodeCandidate(vote), electionId);
     }
 
     public ElectionVoteStub(final Voter voter, final String serializedVote, final String electionId) {
@@ -43,7 +42,7 @@ public class ElectionVoteStub {
         this.playerId = voter.getPlayerId();
         this.electionId = electionId;
         this.voteObject = serializedVote;
-        this.voterObject = JSONUtil.serializeObject(voter).orElse("{}");
+        this.voterObject = ElectionVoteCodec.encodeVoter(voter);
     }
 
 }
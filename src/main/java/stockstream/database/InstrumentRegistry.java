@@ -4,12 +4,12 @@ import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 @Slf4j
 @Repository
@@ -21,25 +21,67 @@ public class InstrumentRegistry {
     @Autowired
     private SessionFactory sessionFactory;
 
+    /**
+     * Brings the table in line with the given instruments. Only new or changed rows are written, and rows missing from
+     * the list are soft-deleted by marking them not tradeable. Every written row gets a fresh updated_at, which is what
+     * lets caches poll getInstrumentStubsUpdatedSince instead of reloading the whole table.
+     */
     @Transactional
     public void saveInstrumentStubs(final List<InstrumentStub> withInstruments) {
         final Session session = sessionFactory.getCurrentSession();
 
-        session.createQuery("DELETE from InstrumentStub").executeUpdate();
+        final Map<String, InstrumentStub> existingByUrl = new HashMap<>();
+        getAllInstrumentStubs().forEach(existing -> existingByUrl.put(existing.getUrl(), existing));
+        session.clear();
 
-        final List<List<InstrumentStub>> instrumentPartitions = Lists.partition(withInstruments, BUFFER_SIZE);
+        final long updatedAt = System.currentTimeMillis();
+        final Map<String, InstrumentStub> changedByUrl = new LinkedHashMap<>();
+
+        for (final InstrumentStub instrument : withInstruments) {
+            final InstrumentStub existing = existingByUrl.remove(instrument.getUrl());
+            if (existing != null && existing.isSameListing(instrument)) {
+                continue;
+            }
+            instrument.setUpdated_at(updatedAt);
+            changedByUrl.put(instrument.getUrl(), instrument);
+        }
+
+        int totalDelisted = 0;
+        for (final InstrumentStub missing : existingByUrl.values()) {
+            if (!missing.isTradeable()) {
+                continue;
+            }
+            missing.setTradeable(false);
+            missing.setUpdated_at(updatedAt);
+            changedByUrl.put(missing.getUrl(), missing);
+            totalDelisted++;
+        }
+
+        final List<List<InstrumentStub>> instrumentPartitions = Lists.partition(new ArrayList<>(changedByUrl.values()), BUFFER_SIZE);
 
         int totalUpdated = 0;
 
         for (final List<InstrumentStub> instrumentStubs : instrumentPartitions) {
-            instrumentStubs.forEach(session::save);
+            instrumentStubs.forEach(session::saveOrUpdate);
             session.flush();
             session.clear();
             totalUpdated += instrumentStubs.size();
             log.info("Saved {} total instruments so far.", totalUpdated);
         }
 
-        log.info("Saved {} InstrumentStub records using {} partitions.", withInstruments.size(), instrumentPartitions.size());
+        log.info("Saved {} changed InstrumentStub records ({} delisted) out of {} using {} partitions.", changedByUrl.size(), totalDelisted, withInstruments.size(), instrumentPartitions.size());
+    }
+
+    public List<InstrumentStub> getInstrumentStubsUpdatedSince(final long updatedAfterMillis) {
+        final Query query = sessionFactory.getCurrentSession().createQuery("FROM InstrumentStub WHERE updated_at > :updatedAfter ORDER BY updated_at");
+        query.setParameter("updatedAfter", updatedAfterMillis);
+
+        @SuppressWarnings("unchecked")
+        List<InstrumentStub> records = (List<InstrumentStub>) query.list();
+
+        log.info("Found {} InstrumentStub records updated since {}.", records.size(), updatedAfterMillis);
+
+        return records;
     }
 
     public List<InstrumentStub> getAllInstrumentStubs() {
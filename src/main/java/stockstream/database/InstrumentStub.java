@@ -9,6 +9,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import java.util.Objects;
 
 @Data
 @Entity
@@ -36,6 +37,27 @@ public class InstrumentStub {
     @Column(name = "min_tick_size")
     private float min_tick_size;
 
+    // Epoch millis of the last write that changed this row, null on rows written before change tracking.
+    @Column(name = "updated_at")
+    private Long updated_at;
+
+    public InstrumentStub(final String url, final String symbol, final String name, final float day_trade_ratio,
+                          final boolean tradeable, final float min_tick_size) {
+        this(url, symbol, name, day_trade_ratio, tradeable, min_tick_size, null);
+    }
+
+    /**
+     * True when both describe the same listing, ignoring when either was written.
+     */
+    public boolean isSameListing(final InstrumentStub other) {
+        return Objects.equals(url, other.url) &&
+               Objects.equals(symbol, other.symbol) &&
+               Objects.equals(name, other.name) &&
+               Float.compare(day_trade_ratio, other.day_trade_ratio) == 0 &&
+               tradeable == other.tradeable &&
+               Float.compare(min_tick_size, other.min_tick_size) == 0;
+    }
+
     public InstrumentStub(final Instrument instrument) {
         this.url = instrument.getUrl();
         this.symbol = instrument.getSymbol();
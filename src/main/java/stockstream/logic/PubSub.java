@@ -1,81 +1,391 @@
 package stockstream.logic;
 
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import stockstream.logic.pubsub.*;
 
-import java.util.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 
 @Slf4j
 public class PubSub {
     private static final int PUBSUB_POOL_SIZE = Integer.valueOf(System.getenv().getOrDefault("PUBSUB_POOL_SIZE", "32"));
+    private static final int PUBSUB_QUEUE_CAPACITY = Integer.valueOf(System.getenv().getOrDefault("PUBSUB_QUEUE_CAPACITY", "1024"));
+    private static final OverflowPolicy PUBSUB_OVERFLOW_POLICY = OverflowPolicy.valueOf(System.getenv().getOrDefault("PUBSUB_OVERFLOW_POLICY", "BLOCK"));
+    private static final int PUBSUB_LANE_COUNT = Integer.valueOf(System.getenv().getOrDefault("PUBSUB_LANE_COUNT", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private static final boolean PUBSUB_VIRTUAL_THREADS = Boolean.valueOf(System.getenv().getOrDefault("PUBSUB_VIRTUAL_THREADS", "false"));
+    private static final int PUBSUB_JOURNAL_SEGMENT_BYTES = Integer.valueOf(System.getenv().getOrDefault("PUBSUB_JOURNAL_SEGMENT_BYTES", String.valueOf(64 * 1024 * 1024)));
+    private static final long PUBSUB_JOURNAL_FLUSH_MILLIS = Long.valueOf(System.getenv().getOrDefault("PUBSUB_JOURNAL_FLUSH_MILLIS", "10"));
+    private static final long PUBSUB_SLOW_SUBSCRIBER_MILLIS = Long.valueOf(System.getenv().getOrDefault("PUBSUB_SLOW_SUBSCRIBER_MILLIS", "1000"));
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(PUBSUB_POOL_SIZE);
+    // Set while a thread is running subscribers, so nested synchronous publishes don't wait on their own drainer, and
+    // publishes never wait for queue space: the drains that would free it need the same threads.
+    private static final ThreadLocal<Boolean> delivering = ThreadLocal.withInitial(() -> false);
 
-    private Map<Class<?>, Set<Function>> functionSubscriptions = Collections.synchronizedMap(new HashMap<>());
-    private Map<Class<?>, Set<Runnable>> runnableSubscriptions = Collections.synchronizedMap(new HashMap<>());
+    private final ExecutorService executorService = createExecutorService();
 
-    public void publishAsync(final Class<?> type, final Object object) {
-        new Thread(() -> publishClassType(type, object)).start();
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("pubsub-timer-%d").setDaemon(true).build());
+
+    private final Map<Class<?>, DispatchQueue> dispatchQueues = new ConcurrentHashMap<>();
+
+    // Keyed publishes are striped over these by key hash, each lane delivers one event at a time.
+    private final DispatchQueue[] lanes = createLanes();
+
+    private final AtomicInteger inFlightEvents = new AtomicInteger();
+
+    private final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+
+    private final Map<Class<?>, EventJournal> journals = new ConcurrentHashMap<>();
+
+    @Getter
+    private volatile PubSubMetrics metrics = new InMemoryPubSubMetrics();
+
+    private final SlowSubscriberWatchdog slowSubscriberWatchdog =
+            new SlowSubscriberWatchdog(PUBSUB_SLOW_SUBSCRIBER_MILLIS, TimeUnit.MILLISECONDS, metrics);
+
+    public PubSub() {
+        final long scanPeriodMillis = Math.max(10, Math.min(1000, PUBSUB_SLOW_SUBSCRIBER_MILLIS / 2));
+        timer.scheduleWithFixedDelay(slowSubscriberWatchdog::scan, scanPeriodMillis, scanPeriodMillis, TimeUnit.MILLISECONDS);
     }
 
-    public void publishClassType(final Class<?> type, final Object object) {
+    public void setMetrics(final PubSubMetrics metrics) {
+        this.metrics = metrics;
+        this.slowSubscriberWatchdog.setMetrics(metrics);
+    }
 
-        final Set<Function> functions = functionSubscriptions.getOrDefault(type, Collections.emptySet());
-        final Set<Runnable> runnables = runnableSubscriptions.getOrDefault(type, Collections.emptySet());
+    public void setSlowSubscriberBudget(final long budget, final TimeUnit unit) {
+        slowSubscriberWatchdog.setBudget(budget, unit);
+    }
 
-        final int jobCount = Math.min(PUBSUB_POOL_SIZE, functions.size() + runnables.size());
+    /**
+     * Like publish, but never blocks the caller. When the type's queue is full under the BLOCK policy the event is
+     * parked on the queue and moved in as the drainer frees space, no thread waits for it.
+     */
+    public CompletableFuture<Void> publishAsync(final Class<?> type, final Object object) {
+        final PendingEvent event = createEvent(type, object);
 
-        final List<Future<?>> executorFutures = new ArrayList<>(jobCount);
+        enqueueOrPark(getDispatchQueue(type), event);
 
-        final ConcurrentLinkedQueue<Function> functionQueue = new ConcurrentLinkedQueue<>(functions);
-        final ConcurrentLinkedQueue<Runnable> runnableQueue = new ConcurrentLinkedQueue<>(runnables);
+        return event.getCompletion();
+    }
 
-        for (int i = 0; i < jobCount; ++i) {
-            executorFutures.add(executorService.submit(() -> {
-                while (!functionQueue.isEmpty()) {
-                    final Function function = functionQueue.poll();
-                    if (function == null) {
-                        continue;
-                    }
-                    try {
-                        function.apply(object);
-                    } catch (Exception e) {
-                        log.warn(e.getMessage(), e);
-                    }
-                }
-                while (!runnableQueue.isEmpty()) {
-                    final Runnable runnable = runnableQueue.poll();
-                    if (runnable == null) {
-                        continue;
-                    }
-                    try {
-                        runnable.run();
-                    } catch (final Exception e) {
-                        log.warn(e.getMessage(), e);
-                    }
-                }
-            }));
+    public void publishClassType(final Class<?> type, final Object object) {
+        if (delivering.get()) {
+            runSubscribers(createEvent(type, object), subscriptionIndex.getSubscribers(type), 0, 1);
+            return;
         }
 
         try {
-            for (final Future<?> demandScoreFuture : executorFutures) {
-                demandScoreFuture.get();
-            }
+            publish(type, object).get();
         } catch (final CancellationException | InterruptedException | ExecutionException e) {
             log.warn(e.getMessage(), e);
         }
+    }
+
+    /**
+     * Queues the event for delivery and returns without waiting for subscribers. The returned handle completes once
+     * every subscriber has run, or is cancelled if the overflow policy dropped the event.
+     */
+    public CompletableFuture<Void> publish(final Class<?> type, final Object object) {
+        final PendingEvent event = createEvent(type, object);
 
+        enqueueFromAnyThread(getDispatchQueue(type), event);
+
+        return event.getCompletion();
     }
 
+    /**
+     * Events published with equal keys are delivered in publish order, each one only after every subscriber finished
+     * the previous one. Events with different keys are delivered in parallel across lanes.
+     */
+    public CompletableFuture<Void> publishKeyed(final Class<?> type, final Object key, final Object object) {
+        final PendingEvent event = createEvent(type, object);
+
+        enqueueFromAnyThread(getLane(key), event);
+
+        return event.getCompletion();
+    }
+
+    /**
+     * Like publishKeyed, but never blocks the caller. When the lane is full under the BLOCK policy the event is parked
+     * on it, the same as publishAsync.
+     */
+    public CompletableFuture<Void> publishKeyedAsync(final Class<?> type, final Object key, final Object object) {
+        final PendingEvent event = createEvent(type, object);
+
+        enqueueOrPark(getLane(key), event);
+
+        return event.getCompletion();
+    }
+
+    // Should be called before the first publish of the type, events already queued under the old settings are kept.
+    public void configureClassType(final Class<?> type, final int capacity, final OverflowPolicy overflowPolicy) {
+        dispatchQueues.put(type, new DispatchQueue(capacity, overflowPolicy, this::onDropped));
+    }
+
+    public int getQueueDepth(final Class<?> type) {
+        final DispatchQueue dispatchQueue = dispatchQueues.get(type);
+        return dispatchQueue == null ? 0 : dispatchQueue.size();
+    }
+
+    public int getQueueDepth() {
+        int queueDepth = dispatchQueues.values().stream().mapToInt(DispatchQueue::size).sum();
+        for (final DispatchQueue lane : lanes) {
+            queueDepth += lane.size();
+        }
+        return queueDepth;
+    }
+
+    public int getInFlightCount() {
+        return inFlightEvents.get();
+    }
+
+    public int getWaitingPublisherCount() {
+        return dispatchQueues.values().stream().mapToInt(DispatchQueue::getParkedCount).sum();
+    }
+
+    // Subscribing to a class type also receives events published as any of its subclasses or implementations.
     public <T> void subscribeFunctionToClassType(final Function<T, Void> onReceive, final Class<?> type) {
-        functionSubscriptions.computeIfAbsent(type, set -> Collections.synchronizedSet(new HashSet<>())).add(onReceive);
+        subscriptionIndex.subscribe(type, onReceive, Subscriber.forFunction(onReceive));
     }
 
     public void subscribeRunnableToClassType(final Runnable runnable, final Class<?> type) {
-        runnableSubscriptions.computeIfAbsent(type, set -> Collections.synchronizedSet(new HashSet<>())).add(runnable);
+        subscriptionIndex.subscribe(type, runnable, Subscriber.forRunnable(runnable));
+    }
+
+    /**
+     * Collapses bursts of events into one call of onBatch, made once no event arrived for debounceWindow or once the
+     * oldest pending event waited maxLatency. The batch is in publish order, so its last element is the latest event.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void subscribeCoalescingFunctionToClassType(final Function<List<T>, Void> onBatch,
+                                                           final Class<?> type,
+                                                           final long debounceWindow,
+                                                           final long maxLatency,
+                                                           final TimeUnit unit) {
+        final CoalescingSubscriber subscriber = new CoalescingSubscriber(onBatch.getClass().getName(),
+                                                                         batch -> onBatch.apply((List<T>) batch),
+                                                                         debounceWindow, maxLatency, unit,
+                                                                         timer, executorService);
+        subscriptionIndex.subscribe(type, onBatch, subscriber);
+    }
+
+    public void subscribeCoalescingRunnableToClassType(final Runnable runnable,
+                                                       final Class<?> type,
+                                                       final long debounceWindow,
+                                                       final long maxLatency,
+                                                       final TimeUnit unit) {
+        final CoalescingSubscriber subscriber = new CoalescingSubscriber(runnable.getClass().getName(),
+                                                                         batch -> runnable.run(),
+                                                                         debounceWindow, maxLatency, unit,
+                                                                         timer, executorService);
+        subscriptionIndex.subscribe(type, runnable, subscriber);
+    }
+
+    /**
+     * Journals every event published as this exact class type to a memory-mapped file in the directory, so durable
+     * subscribers can resume after a restart. Journal writes are forced to disk together every
+     * PUBSUB_JOURNAL_FLUSH_MILLIS.
+     */
+    public synchronized void enableJournal(final Class<?> type, final File directory) throws IOException {
+        if (journals.containsKey(type)) {
+            return;
+        }
+
+        final EventJournal journal = new EventJournal(type, directory, PUBSUB_JOURNAL_SEGMENT_BYTES);
+        journals.put(type, journal);
+
+        timer.scheduleWithFixedDelay(journal::flush, PUBSUB_JOURNAL_FLUSH_MILLIS, PUBSUB_JOURNAL_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void flushJournals() {
+        journals.values().forEach(EventJournal::flush);
+    }
+
+    /**
+     * Replays journaled events published after this subscriber's last checkpoint, then keeps delivering live events.
+     * The subscriber id names the checkpoint, so it must stay the same across restarts.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void subscribeDurableFunctionToClassType(final Function<T, Void> onReceive,
+                                                        final Class<T> type,
+                                                        final String subscriberId) {
+        final EventJournal journal = journals.get(type);
+        if (journal == null) {
+            throw new IllegalStateException("No journal enabled for " + type.getName());
+        }
+
+        final DurableSubscriber subscriber = new DurableSubscriber(subscriberId, journal, payload -> onReceive.apply((T) payload));
+        subscriptionIndex.subscribe(type, onReceive, subscriber);
+        subscriber.replay();
+    }
+
+    public void unsubscribeFromClassType(final Object subscriber, final Class<?> type) {
+        subscriptionIndex.unsubscribe(type, subscriber);
+    }
+
+    private static ExecutorService createExecutorService() {
+        if (PUBSUB_VIRTUAL_THREADS) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (final ReflectiveOperationException e) {
+                log.warn("Virtual threads are not available on this JVM, falling back to a fixed pool.", e);
+            }
+        }
+        return Executors.newFixedThreadPool(PUBSUB_POOL_SIZE, new ThreadFactoryBuilder().setNameFormat("pubsub-%d").build());
+    }
+
+    private DispatchQueue[] createLanes() {
+        final DispatchQueue[] lanes = new DispatchQueue[Math.max(1, PUBSUB_LANE_COUNT)];
+        for (int i = 0; i < lanes.length; ++i) {
+            lanes[i] = new DispatchQueue(PUBSUB_QUEUE_CAPACITY, PUBSUB_OVERFLOW_POLICY, this::onDropped);
+        }
+        return lanes;
+    }
+
+    private DispatchQueue getLane(final Object key) {
+        final int hash = key.hashCode();
+        return lanes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    private DispatchQueue getDispatchQueue(final Class<?> type) {
+        return dispatchQueues.computeIfAbsent(type, queue -> new DispatchQueue(PUBSUB_QUEUE_CAPACITY, PUBSUB_OVERFLOW_POLICY, this::onDropped));
+    }
+
+    private PendingEvent createEvent(final Class<?> type, final Object object) {
+        metrics.recordPublish(type);
+
+        final EventJournal journal = journals.isEmpty() ? null : journals.get(type);
+        if (journal == null) {
+            return new PendingEvent(type, object);
+        }
+        return new PendingEvent(type, object, journal.append(object));
+    }
+
+    private void onDropped(final PendingEvent event) {
+        metrics.recordDrop(event.getType());
+
+        final EventJournal journal = event.getSequence() == 0 ? null : journals.get(event.getType());
+        if (journal != null) {
+            journal.resolveDropped(event.getSequence());
+        }
+    }
+
+    private DispatchQueue.OfferResult enqueue(final DispatchQueue dispatchQueue, final PendingEvent event, final boolean waitForSpace) {
+        try {
+            final DispatchQueue.OfferResult offerResult = dispatchQueue.offer(event, waitForSpace);
+            if (offerResult == DispatchQueue.OfferResult.SCHEDULE_DRAIN) {
+                executorService.execute(() -> drain(dispatchQueue));
+            }
+            return offerResult;
+        } catch (final InterruptedException e) {
+            log.warn(e.getMessage(), e);
+            event.getCompletion().cancel(false);
+            onDropped(event);
+            Thread.currentThread().interrupt();
+            return DispatchQueue.OfferResult.FULL;
+        }
+    }
+
+    private void enqueueFromAnyThread(final DispatchQueue dispatchQueue, final PendingEvent event) {
+        if (delivering.get()) {
+            enqueueOrPark(dispatchQueue, event);
+        } else {
+            enqueue(dispatchQueue, event, true);
+        }
+    }
+
+    private void enqueueOrPark(final DispatchQueue dispatchQueue, final PendingEvent event) {
+        if (dispatchQueue.offerOrPark(event) == DispatchQueue.OfferResult.SCHEDULE_DRAIN) {
+            executorService.execute(() -> drain(dispatchQueue));
+        }
+    }
+
+    private void drain(final DispatchQueue dispatchQueue) {
+        PendingEvent event;
+        while ((event = dispatchQueue.poll()) != null) {
+            inFlightEvents.incrementAndGet();
+            metrics.recordQueueWait(event.getType(), System.nanoTime() - event.getPublishedNanos());
+            event.getCompletion().whenComplete((result, throwable) -> inFlightEvents.decrementAndGet());
+            if (!deliver(dispatchQueue, event)) {
+                // The last subscriber job to finish picks the drain back up.
+                return;
+            }
+        }
+    }
+
+    private boolean deliver(final DispatchQueue dispatchQueue, final PendingEvent event) {
+        final Subscriber[] subscribers = subscriptionIndex.getSubscribers(event.getType());
+
+        final int jobCount = Math.min(PUBSUB_POOL_SIZE, subscribers.length);
+
+        if (jobCount <= 1) {
+            runSubscribers(event, subscribers, 0, 1);
+            event.complete();
+            return true;
+        }
+
+        final AtomicInteger remainingJobs = new AtomicInteger(jobCount);
+
+        for (int i = 1; i < jobCount; ++i) {
+            final int jobIndex = i;
+            executorService.execute(() -> {
+                try {
+                    runSubscribers(event, subscribers, jobIndex, jobCount);
+                } finally {
+                    if (remainingJobs.decrementAndGet() == 0) {
+                        event.complete();
+                        drain(dispatchQueue);
+                    }
+                }
+            });
+        }
+
+        runSubscribers(event, subscribers, 0, jobCount);
+
+        if (remainingJobs.decrementAndGet() == 0) {
+            event.complete();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Never throws for a subscriber, not even an Error, since the caller still has to complete the event and hand the
+     * drain on.
+     */
+    private void runSubscribers(final PendingEvent event,
+                                final Subscriber[] subscribers,
+                                final int firstIndex,
+                                final int stride) {
+        final boolean wasDelivering = delivering.get();
+        delivering.set(true);
+
+        try {
+            for (int i = firstIndex; i < subscribers.length; i += stride) {
+                final Subscriber subscriber = subscribers[i];
+                final SlowSubscriberWatchdog.Delivery delivery = slowSubscriberWatchdog.start(event.getType(), subscriber.getName());
+                try {
+                    subscriber.deliver(event);
+                } catch (final Throwable t) {
+                    log.warn(t.getMessage(), t);
+                    metrics.recordFailure(event.getType(), subscriber.getName(), t);
+                } finally {
+                    metrics.recordDelivery(event.getType(), subscriber.getName(), slowSubscriberWatchdog.finish(delivery));
+                }
+            }
+        } finally {
+            delivering.set(wasDelivering);
+        }
     }
 
 }
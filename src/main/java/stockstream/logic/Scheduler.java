@@ -3,11 +3,24 @@ package stockstream.logic;
 
 import lombok.extern.slf4j.Slf4j;
 import org.joda.time.DateTime;
+import stockstream.logic.scheduler.EventFanOut;
+import stockstream.logic.scheduler.JobHandle;
+import stockstream.logic.scheduler.JobSnapshot;
+import stockstream.logic.scheduler.JobTimer;
+import stockstream.logic.scheduler.MarketSchedule;
+import stockstream.logic.scheduler.MarketScheduledJob;
+import stockstream.logic.scheduler.OverrunPolicy;
+import stockstream.logic.scheduler.TimerWheel;
+import stockstream.util.RandomUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -15,50 +28,164 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class Scheduler {
     private static final int SCHEDULER_POOL_SIZE = Integer.valueOf(System.getenv().getOrDefault("SCHEDULER_POOL_SIZE", "32"));
+    private static final boolean SCHEDULER_TIMER_WHEEL = Boolean.valueOf(System.getenv().getOrDefault("SCHEDULER_TIMER_WHEEL", "false"));
+    private static final int SCHEDULER_EVENT_PARALLELISM = Integer.valueOf(System.getenv().getOrDefault("SCHEDULER_EVENT_PARALLELISM", "8"));
+    private static final long SCHEDULER_TIMER_WHEEL_TICK_MILLIS = Long.valueOf(System.getenv().getOrDefault("SCHEDULER_TIMER_WHEEL_TICK_MILLIS", "10"));
+    private static final long SCHEDULER_MARKET_PHASE_CHECK_SECONDS = Long.valueOf(System.getenv().getOrDefault("SCHEDULER_MARKET_PHASE_CHECK_SECONDS", "30"));
+    private static final OverrunPolicy SCHEDULER_OVERRUN_POLICY = OverrunPolicy.valueOf(System.getenv().getOrDefault("SCHEDULER_OVERRUN_POLICY", "WARN"));
 
     private final ScheduledThreadPoolExecutor threadPoolExecutor = new ScheduledThreadPoolExecutor(SCHEDULER_POOL_SIZE);
     private final Map<Enum, Set<Runnable>> eventRunnableMap = new ConcurrentHashMap<>();
+    private final Map<Runnable, Set<JobHandle>> jobHandles = new ConcurrentHashMap<>();
+    private final Set<MarketScheduledJob> marketScheduledJobs = ConcurrentHashMap.newKeySet();
 
+    private final JobTimer periodicTimer = JobTimer.forExecutor(threadPoolExecutor);
+    private final JobTimer oneShotTimer;
+
+    public Scheduler() {
+        this(SCHEDULER_TIMER_WHEEL);
+    }
+
+    /**
+     * With useTimerWheel, one-shot jobs go into a TimerWheel instead of the executor's delay heap, which keeps
+     * scheduling and cancelling cheap when many thousands of them are pending.
+     */
+    public Scheduler(final boolean useTimerWheel) {
+        threadPoolExecutor.setRemoveOnCancelPolicy(true);
+        threadPoolExecutor.scheduleWithFixedDelay(this::refreshMarketScheduledJobs, SCHEDULER_MARKET_PHASE_CHECK_SECONDS, SCHEDULER_MARKET_PHASE_CHECK_SECONDS, TimeUnit.SECONDS);
+
+        if (useTimerWheel) {
+            final TimerWheel timerWheel = new TimerWheel(SCHEDULER_TIMER_WHEEL_TICK_MILLIS, threadPoolExecutor);
+            threadPoolExecutor.scheduleAtFixedRate(timerWheel::advance, SCHEDULER_TIMER_WHEEL_TICK_MILLIS, SCHEDULER_TIMER_WHEEL_TICK_MILLIS, TimeUnit.MILLISECONDS);
+            oneShotTimer = timerWheel;
+        } else {
+            oneShotTimer = periodicTimer;
+        }
+    }
+
+    // Cancels every timed run of the job and removes it from all events.
     public void cancelJob(final Runnable job) {
-        threadPoolExecutor.remove(job);
+        final Set<JobHandle> handles = jobHandles.remove(job);
+        if (handles != null) {
+            handles.forEach(JobHandle::cancel);
+        }
+        eventRunnableMap.values().forEach(runnables -> runnables.remove(job));
+    }
+
+    public Collection<JobHandle> getJobHandles() {
+        final List<JobHandle> handles = new ArrayList<>();
+        jobHandles.values().forEach(handles::addAll);
+        return handles;
     }
 
-    public void scheduleJob(final Runnable job,
-                            final long initialDelay,
-                            final long period,
-                            final TimeUnit unit) {
-        threadPoolExecutor.scheduleWithFixedDelay(() -> {
-            try {
-                job.run();
-            } catch (Exception ex) {
-                log.warn(ex.getMessage(), ex);
-            }
-        }, initialDelay, period, unit);
+    // Registered jobs, soonest first.
+    public List<JobSnapshot> getJobSnapshots() {
+        final List<JobSnapshot> snapshots = new ArrayList<>();
+        getJobHandles().forEach(jobHandle -> snapshots.add(jobHandle.snapshot()));
+        snapshots.sort(Comparator.comparingLong(JobSnapshot::getNextFireTimeMillis));
+        return snapshots;
     }
 
-    public void scheduleJob(final Runnable job, final DateTime atDate) {
+    public JobHandle scheduleJob(final Runnable job,
+                                 final long initialDelay,
+                                 final long period,
+                                 final TimeUnit unit) {
+        return scheduleJob(job, initialDelay, period, unit, 0);
+    }
+
+    /**
+     * Delays the first run by a random extra amount up to maxStartJitter, so the same periodic job started on several
+     * nodes at once doesn't hit shared resources in lockstep.
+     */
+    public JobHandle scheduleJob(final Runnable job,
+                                 final long initialDelay,
+                                 final long period,
+                                 final TimeUnit unit,
+                                 final long maxStartJitter) {
+        return scheduleJob(job, initialDelay, period, unit, maxStartJitter, SCHEDULER_OVERRUN_POLICY);
+    }
+
+    public JobHandle scheduleJob(final Runnable job,
+                                 final long initialDelay,
+                                 final long period,
+                                 final TimeUnit unit,
+                                 final long maxStartJitter,
+                                 final OverrunPolicy overrunPolicy) {
+        final long startDelayMillis = unit.toMillis(initialDelay) + RandomUtil.nextLong(unit.toMillis(maxStartJitter));
+
+        final JobHandle jobHandle = registerJob(job, period, unit, overrunPolicy, periodicTimer);
+        jobHandle.start(startDelayMillis, TimeUnit.MILLISECONDS);
+        return jobHandle;
+    }
+
+    public JobHandle scheduleJob(final Runnable job, final MarketSchedule marketSchedule) {
+        return scheduleJob(job, marketSchedule, SCHEDULER_OVERRUN_POLICY);
+    }
+
+    /**
+     * Runs the job at the period its schedule gives for the current market phase, suspending it in phases without one.
+     * The phase is checked every SCHEDULER_MARKET_PHASE_CHECK_SECONDS; the first check happens on the pool so the
+     * caller doesn't wait on the broker.
+     */
+    public JobHandle scheduleJob(final Runnable job, final MarketSchedule marketSchedule, final OverrunPolicy overrunPolicy) {
+        final JobHandle jobHandle = registerJob(job, 0, TimeUnit.MILLISECONDS, overrunPolicy, periodicTimer);
+        final MarketScheduledJob marketScheduledJob = new MarketScheduledJob(jobHandle, marketSchedule);
+
+        marketScheduledJobs.add(marketScheduledJob);
+        threadPoolExecutor.execute(marketScheduledJob::refresh);
+        return jobHandle;
+    }
+
+    public JobHandle scheduleJob(final Runnable job, final DateTime atDate) {
         final DateTime now = new DateTime();
         final long timeDifferenceMilliseconds = atDate.getMillis() - now.getMillis();
-        threadPoolExecutor.schedule(() -> {
-            try {
-                job.run();
-            } catch (final Exception ex) {
-                log.warn(ex.getMessage(), ex);
-            }
-        }, timeDifferenceMilliseconds, TimeUnit.MILLISECONDS);
+
+        final JobHandle jobHandle = registerJob(job, 0, TimeUnit.MILLISECONDS, SCHEDULER_OVERRUN_POLICY, oneShotTimer);
+        jobHandle.start(Math.max(0, timeDifferenceMilliseconds), TimeUnit.MILLISECONDS);
+        return jobHandle;
     }
 
     public void scheduleJob(final Runnable job, final Enum event) {
-        eventRunnableMap.computeIfAbsent(event, set -> new HashSet<>()).add(() -> {
-            try {
-                job.run();
-            } catch (final Exception ex) {
-                log.warn("Scheduler job issue {} {} {} {}", job, event, ex.getMessage(), ex);
-            }
-        });
+        eventRunnableMap.computeIfAbsent(event, set -> ConcurrentHashMap.newKeySet()).add(job);
     }
 
+    /**
+     * Runs the event's jobs in parallel, up to SCHEDULER_EVENT_PARALLELISM at a time, and returns once they have all
+     * finished. The calling thread works through jobs too, so this never waits on a busy pool to make progress.
+     */
     public void notifyEvent(final Enum event) {
-        eventRunnableMap.getOrDefault(event, Collections.emptySet()).forEach(Runnable::run);
+        final EventFanOut fanOut = new EventFanOut(event, eventRunnableMap.getOrDefault(event, Collections.emptySet()));
+        fanOut.start(threadPoolExecutor, SCHEDULER_EVENT_PARALLELISM - 1);
+        fanOut.run();
+        fanOut.getCompletion().join();
+    }
+
+    // Like notifyEvent, but every job runs on the pool and the returned future completes when they have all finished.
+    public CompletableFuture<Void> notifyEventAsync(final Enum event) {
+        final EventFanOut fanOut = new EventFanOut(event, eventRunnableMap.getOrDefault(event, Collections.emptySet()));
+        fanOut.start(threadPoolExecutor, SCHEDULER_EVENT_PARALLELISM);
+        return fanOut.getCompletion();
+    }
+
+    private void refreshMarketScheduledJobs() {
+        marketScheduledJobs.removeIf(marketScheduledJob -> marketScheduledJob.getJobHandle().isCancelled());
+        marketScheduledJobs.forEach(MarketScheduledJob::refresh);
+    }
+
+    private JobHandle registerJob(final Runnable job,
+                                  final long period,
+                                  final TimeUnit unit,
+                                  final OverrunPolicy overrunPolicy,
+                                  final JobTimer timer) {
+        final JobHandle jobHandle = new JobHandle(job, period, unit, overrunPolicy, timer, this::unregisterJob);
+        jobHandles.computeIfAbsent(job, set -> ConcurrentHashMap.newKeySet()).add(jobHandle);
+        return jobHandle;
+    }
+
+    private void unregisterJob(final JobHandle jobHandle) {
+        jobHandles.computeIfPresent(jobHandle.getJob(), (job, handles) -> {
+            handles.remove(jobHandle);
+            return handles.isEmpty() ? null : handles;
+        });
     }
 }
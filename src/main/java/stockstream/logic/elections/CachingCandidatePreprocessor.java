@@ -0,0 +1,85 @@
+package stockstream.logic.elections;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.AllArgsConstructor;
+import stockstream.data.Voter;
+import stockstream.logic.PubSub;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers another preprocessor's answers for a while, rejections included, so repeating a bad command doesn't
+ * validate it again. Answers are kept per candidate, or per candidate and voter when the check depends on who voted.
+ * Exceptions aren't cached.
+ */
+public class CachingCandidatePreprocessor<T> implements CandidatePreprocessor<T> {
+
+    private static final long MAXIMUM_SIZE = 10000;
+
+    private final CandidatePreprocessor<T> candidatePreprocessor;
+    private final boolean perVoter;
+    private final Cache<Object, Answer> results;
+
+    // Bumped by every invalidation. An answer loaded under an older generation may predate the invalidation, so it is
+    // never served, even if its load finished and wrote it back afterwards.
+    private final AtomicLong generation = new AtomicLong();
+
+    @AllArgsConstructor
+    private static class Answer {
+        private final long generation;
+        private final Optional<String> result;
+    }
+
+    private final Runnable invalidateAllRunnable = this::invalidateAll;
+
+    public CachingCandidatePreprocessor(final CandidatePreprocessor<T> candidatePreprocessor,
+                                        final long ttl,
+                                        final TimeUnit unit,
+                                        final boolean perVoter) {
+        this.candidatePreprocessor = candidatePreprocessor;
+        this.perVoter = perVoter;
+        this.results = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).expireAfterWrite(ttl, unit).build();
+    }
+
+    // Forgets every answer whenever an event of the type is published, e.g. OrderResult after a trade changes the account.
+    public CachingCandidatePreprocessor<T> invalidateOn(final PubSub pubSub, final Class<?> type) {
+        pubSub.subscribeRunnableToClassType(invalidateAllRunnable, type);
+        return this;
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    public long size() {
+        return results.size();
+    }
+
+    @Override
+    public Optional<String> preProcessCandidate(final T candidate, final Voter voter) {
+        final Object key = perVoter ? Arrays.asList(candidate, voter.getPlayerId()) : candidate;
+
+        try {
+            while (true) {
+                final long currentGeneration = generation.get();
+                final Answer answer = results.get(key, () -> new Answer(currentGeneration, candidatePreprocessor.preProcessCandidate(candidate, voter)));
+                if (answer.generation == currentGeneration) {
+                    return answer.result;
+                }
+                results.asMap().remove(key, answer);
+            }
+        } catch (final ExecutionException | UncheckedExecutionException ex) {
+            Throwables.throwIfUnchecked(ex.getCause());
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+}
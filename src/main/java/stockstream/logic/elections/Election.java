@@ -1,15 +1,19 @@
 package stockstream.logic.elections;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.CollectionUtils;
 import stockstream.data.Voter;
 import stockstream.database.ElectionRegistry;
+import stockstream.database.ElectionVoteBuffer;
+import stockstream.database.ElectionVoteCodec;
 import stockstream.database.ElectionVoteStub;
-import stockstream.util.JSONUtil;
+import stockstream.logic.PubSub;
+import stockstream.logic.Scheduler;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,6 +26,19 @@ public class Election<T extends Candidate> {
     @Autowired
     private ElectionRegistry electionRegistry;
 
+    @Setter
+    @Autowired(required = false)
+    private PubSub pubSub;
+
+    @Setter
+    @Autowired(required = false)
+    private Scheduler scheduler;
+
+    // Without a buffer every vote is saved before receiveVote returns.
+    @Setter
+    @Autowired(required = false)
+    private ElectionVoteBuffer electionVoteBuffer;
+
     private Map<T, Runnable> candidateToRunnable = new ConcurrentHashMap<>();
 
     @Getter
@@ -51,11 +68,25 @@ public class Election<T extends Candidate> {
     @Getter @Setter
     private int maximumCandidates = 0;
 
-    @Getter @Setter
+    // Always a HashSet of the voters given, whatever collection they came in, so the check per message is O(1).
+    @Getter
     private Collection<Voter> eligibleVoters = new HashSet<>();
 
+    private VotePrefilter votePrefilter = null;
+    // Encoded candidate per message, including messages that didn't parse. Candidates are mutable, so only the encoding
+    // is kept and each message gets a candidate of its own. Null when caching is off.
+    private Cache<String, Optional<String>> parsedVoteCache = null;
+
     final private Class<T> candidateClassType;
 
+    // Zero leaves the live leaderboard off.
+    private int liveLeaderboardSize = 0;
+    private long liveLeaderboardIntervalMillis = 0;
+    private volatile LiveLeaderboard liveLeaderboard = null;
+
+    // Votes for the current election id, loaded from the registry the first time they're needed.
+    private volatile VoteTally<T> voteTally = null;
+
     public Election(final String topic, final Class<T> candidateClassType, final int rank) {
         this.topic = topic;
         this.rank = rank;
@@ -82,7 +113,25 @@ public class Election<T extends Candidate> {
     }
 
     public Election<T> withEligibleVoters(final Collection<Voter> eligibleVoters) {
-        this.eligibleVoters = eligibleVoters;
+        setEligibleVoters(eligibleVoters);
+        return this;
+    }
+
+    public void setEligibleVoters(final Collection<Voter> eligibleVoters) {
+        this.eligibleVoters = new HashSet<>(eligibleVoters);
+    }
+
+    public Election<T> withVotePrefilter(final VotePrefilter votePrefilter) {
+        this.votePrefilter = votePrefilter;
+        return this;
+    }
+
+    /**
+     * Remembers what the message parser returned for the last maximumSize distinct messages. Chat repeats the same
+     * few commands, so most messages skip parsing. Only use this with parsers whose result depends on the message alone.
+     */
+    public Election<T> withParsedVoteCache(final long maximumSize) {
+        this.parsedVoteCache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
         return this;
     }
 
@@ -96,6 +145,16 @@ public class Election<T extends Candidate> {
         return this;
     }
 
+    /**
+     * Publishes a LeaderboardUpdate with the top candidates through PubSub whenever they change, at most once per
+     * interval. Needs both PubSub and the Scheduler to be wired in.
+     */
+    public Election<T> withLiveLeaderboard(final int size, final long minIntervalMillis) {
+        this.liveLeaderboardSize = size;
+        this.liveLeaderboardIntervalMillis = minIntervalMillis;
+        return this;
+    }
+
     public synchronized Election<T> withOutcome(final T candidate, final Runnable runnable) {
         addOutcome(candidate, runnable);
         return this;
@@ -116,54 +175,46 @@ public class Election<T extends Candidate> {
     }
 
     public Map<T, Set<Voter>> getCandidateToVoters() {
-        final Collection<ElectionVoteStub> electionVoteStubs = electionRegistry.getElectionVotes(this.getElectionId());
+        return getVoteTally().getCandidateToVoters();
+    }
 
-        final Map<T, Set<Voter>> candidateToVoters = new HashMap<>();
-        electionVoteStubs.forEach(vote -> {
-            final Optional<T> candidate = JSONUtil.deserializeObject(vote.getVoteObject(), this.candidateClassType);
-            final Optional<Voter> voter = JSONUtil.deserializeObject(vote.getVoterObject(), Voter.class);
+    public Map<T, Integer> getCandidateToVoteCount() {
+        return getVoteTally().getCandidateToVoteCount();
+    }
 
-            if (!candidate.isPresent() || !voter.isPresent()) {
-                return;
-            }
-            candidateToVoters.computeIfAbsent(candidate.get(), set -> new HashSet<>()).add(voter.get());
-        });
+    public ElectionSnapshot<T> snapshot() {
+        final VoteTally<T> currentTally = getVoteTally();
+        final Map<T, Integer> candidateToVoteCount = currentTally.getCandidateToVoteCount();
+
+        final Set<T> candidates = new HashSet<>(candidateToVoteCount.keySet());
+        candidates.addAll(candidateToRunnable.keySet());
 
-        return Collections.unmodifiableMap(candidateToVoters);
+        return new ElectionSnapshot<>(topic, currentTally.getElectionId(), expirationDate, rank,
+                                      candidateToVoteCount, Collections.unmodifiableSet(candidates));
     }
 
     public SortedMap<T, Set<Voter>> getSortedCandidateToVoters() {
-        final Map<T, Set<Voter>> candidateToVoters = this.getCandidateToVoters();
-
-        final SortedMap<T, Set<Voter>> candidates = new TreeMap<>(new VoteComparator<>(candidateToVoters));
-
-        candidateToVoters.forEach((key, value) -> {
-            if (value.size() > 0) {
-                candidates.put(key, value);
-            }
-        });
+        return getVoteTally().getSortedCandidateToVoters();
+    }
 
-        return candidates;
+    public List<T> getTopCandidates(final int k) {
+        return getVoteTally().getTopCandidates(k);
     }
 
     public Map<Voter, T> getVoterToCandidate() {
-        final Map<T, Set<Voter>> candidateToVoters = this.getCandidateToVoters();
-
-        final Map<Voter, T> voterToCandidate = new HashMap<>();
-        candidateToVoters.forEach((candidate, voters) -> voters.forEach(voter -> voterToCandidate.put(voter, candidate)));
-        return voterToCandidate;
+        return getVoteTally().getVoterToCandidate();
     }
 
     public void executeOutcome() {
-        final SortedMap<T, Set<Voter>> sortedCandidates = getSortedCandidateToVoters();
+        flushVotes();
+
+        final Optional<T> winningCandidate = getVoteTally().getWinningCandidate();
 
-        if (CollectionUtils.isEmpty(sortedCandidates.keySet())) {
+        if (!winningCandidate.isPresent()) {
             return;
         }
 
-        final T winningCandidate = sortedCandidates.firstKey();
-
-        executeOutcome(winningCandidate);
+        executeOutcome(winningCandidate.get());
     }
 
     private void executeOutcome(final T winningCandidate) {
@@ -191,6 +242,10 @@ public class Election<T extends Candidate> {
     }
 
     public Optional<String> receiveVote(final String vote, final Voter voter) {
+        if (votePrefilter != null && !votePrefilter.mightBeVote(vote)) {
+            return Optional.empty();
+        }
+
         final boolean eligibilityCheckFailed = eligibleVoters.size() > 0 && !eligibleVoters.contains(voter);
         final boolean subscriptionCheckFailed = subscribersOnly && !voter.isSubscriber();
         final boolean maxCandidatesCheckFailed = maximumCandidates > 0 && preProcessedCandidates.size() >= maximumCandidates;
@@ -199,11 +254,7 @@ public class Election<T extends Candidate> {
             return Optional.empty();
         }
 
-        Optional<T> optionalVoteObject = Optional.empty();
-
-        if (messageParser != null) {
-            optionalVoteObject = messageParser.apply(vote);
-        }
+        final Optional<T> optionalVoteObject = parseVote(vote);
 
         if (!optionalVoteObject.isPresent()) {
             return Optional.empty();
@@ -230,9 +281,106 @@ public class Election<T extends Candidate> {
         return Optional.empty();
     }
 
+    private Optional<T> parseVote(final String vote) {
+        if (messageParser == null) {
+            return Optional.empty();
+        }
+        if (parsedVoteCache == null) {
+            return messageParser.apply(vote);
+        }
+
+        final Optional<String> encodedVote = parsedVoteCache.getIfPresent(vote);
+        if (encodedVote != null) {
+            if (!encodedVote.isPresent()) {
+                return Optional.empty();
+            }
+            final Optional<T> decodedVote = ElectionVoteCodec.decodeCandidate(encodedVote.get(), candidateClassType);
+            if (decodedVote.isPresent()) {
+                return decodedVote;
+            }
+        }
+
+        // Parser failures reach the caller as they are, nothing is cached for them.
+        final Optional<T> parsedVote = messageParser.apply(vote);
+        parsedVoteCache.put(vote, parsedVote.map(ElectionVoteCodec::encodeCandidate));
+        return parsedVote;
+    }
+
     private void persistVote(final Voter voter, final T vote) {
-        final ElectionVoteStub electionVoteStub = new ElectionVoteStub(voter, vote, this.getElectionId());
+        final VoteTally<T> currentTally = getVoteTally();
+        final ElectionVoteStub electionVoteStub = new ElectionVoteStub(voter, vote, currentTally.getElectionId());
+
+        // Buffered votes never throw here, so the tally below always matches what will reach the database.
+        if (electionVoteBuffer != null) {
+            electionVoteBuffer.addVote(electionVoteStub);
+        } else {
+            electionRegistry.saveElectionVotes(ImmutableSet.of(electionVoteStub));
+        }
+        currentTally.recordVote(voter, vote);
+
+        getLiveLeaderboard().ifPresent(LiveLeaderboard::onVote);
+    }
+
+    public Optional<LiveLeaderboard> getLiveLeaderboard() {
+        if (liveLeaderboardSize <= 0 || pubSub == null || scheduler == null) {
+            return Optional.empty();
+        }
+        if (liveLeaderboard == null) {
+            synchronized (this) {
+                if (liveLeaderboard == null) {
+                    liveLeaderboard = new LiveLeaderboard(topic, this::getElectionId, () -> getVoteTally().getTopStandings(liveLeaderboardSize),
+                                                          pubSub, scheduler, liveLeaderboardIntervalMillis);
+                }
+            }
+        }
+        return Optional.of(liveLeaderboard);
+    }
+
+    // Makes every vote received so far durable.
+    public void flushVotes() {
+        if (electionVoteBuffer != null) {
+            electionVoteBuffer.flush();
+        }
+    }
+
+    /**
+     * The tally only sees votes cast through this instance once loaded, so it's rebuilt from the registry whenever the
+     * election id changes, e.g. on startup or when the expiration date moves on to the next round.
+     */
+    private VoteTally<T> getVoteTally() {
+        final String electionId = getElectionId();
+
+        final VoteTally<T> currentTally = voteTally;
+        if (currentTally != null && currentTally.getElectionId().equals(electionId)) {
+            return currentTally;
+        }
+
+        synchronized (this) {
+            if (voteTally == null || !voteTally.getElectionId().equals(electionId)) {
+                voteTally = loadVoteTally(electionId);
+            }
+            return voteTally;
+        }
+    }
+
+    private VoteTally<T> loadVoteTally(final String electionId) {
+        final VoteTally<T> loadedTally = new VoteTally<>(electionId);
+
+        flushVotes();
+
+        // Shared only within this tally, candidates are mutable and other elections must not see each other's.
+        final Map<String, Optional<T>> decodedCandidates = new HashMap<>();
+
+        electionRegistry.getElectionVotes(electionId).forEach(vote -> {
+            final Optional<T> candidate = ElectionVoteCodec.decodeCandidate(vote.getVoteObject(), this.candidateClassType, decodedCandidates);
+            final Optional<Voter> voter = ElectionVoteCodec.decodeVoter(vote.getVoterObject());
+
+            if (!candidate.isPresent() || !voter.isPresent()) {
+                return;
+            }
+            loadedTally.recordVote(voter.get(), candidate.get());
+        });
 
-        electionRegistry.saveElectionVotes(ImmutableSet.of(electionVoteStub));
+        return loadedTally;
     }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+package stockstream.logic.elections;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import stockstream.data.Voter;
+import stockstream.database.ElectionRegistry;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Hosts many elections at once. Each election belongs to one shard, a single thread picked by its election id, and all
+ * of its votes and its outcome run there in order; different elections proceed in parallel and never contend.
+ * Lookups go through a concurrent map, so routing a vote takes no global lock. Elections registered under a route,
+ * such as a chat channel, also get the raw chat lines of voters that the vote router maps to that route.
+ */
+@Slf4j
+public class ElectionEngine {
+
+    private static final int ELECTION_ENGINE_SHARDS = Integer.valueOf(System.getenv().getOrDefault("ELECTION_ENGINE_SHARDS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    // Without a registry expired elections are still decided, just not archived.
+    @Setter
+    @Autowired(required = false)
+    private ElectionRegistry electionRegistry;
+
+    // Maps a chat line's voter to the route its elections are registered under, the voter's channel by default.
+    @Setter
+    private Function<Voter, String> voteRouter = Voter::getChannel;
+
+    private final ExecutorService[] shards;
+    private final Map<String, Election<?>> elections = new ConcurrentHashMap<>();
+
+    // Election ids per route, and the route of each routed election. The id sets are only changed inside compute.
+    private final Map<String, Set<String>> routeToElectionIds = new ConcurrentHashMap<>();
+    private final Map<String, String> electionIdToRoute = new ConcurrentHashMap<>();
+
+    // Archiving is a database transaction, so it runs here instead of holding up a shard's votes.
+    private final ExecutorService archiveExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("election-archive").setDaemon(true).build());
+
+    // Guarded by this. Decided elections whose archive failed, retried with the next expiry.
+    private final List<Election<?>> unarchivedElections = new ArrayList<>();
+
+    public ElectionEngine() {
+        this(ELECTION_ENGINE_SHARDS);
+    }
+
+    public ElectionEngine(final int shardCount) {
+        shards = new ExecutorService[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("election-shard-" + i).setDaemon(true).build());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (final ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        archiveExecutor.shutdown();
+    }
+
+    /**
+     * Elections are keyed by their id when registered, so one that moves to a new expiration date has to be
+     * registered again.
+     */
+    public String registerElection(final Election<?> election) {
+        final String electionId = election.getElectionId();
+        elections.put(electionId, election);
+        return electionId;
+    }
+
+    // Like registerElection, and routes chat lines from voters the vote router maps to the route to the election too.
+    public String registerElection(final Election<?> election, final String route) {
+        final String electionId = registerElection(election);
+        electionIdToRoute.put(electionId, route);
+        routeToElectionIds.compute(route, (key, electionIds) -> {
+            final Set<String> routedElectionIds = electionIds == null ? ConcurrentHashMap.newKeySet() : electionIds;
+            routedElectionIds.add(electionId);
+            return routedElectionIds;
+        });
+        return electionId;
+    }
+
+    public Optional<Election<?>> unregisterElection(final String electionId) {
+        unroute(electionId);
+        return Optional.ofNullable(elections.remove(electionId));
+    }
+
+    public Optional<Election<?>> getElection(final String electionId) {
+        return Optional.ofNullable(elections.get(electionId));
+    }
+
+    public Collection<Election<?>> getElections() {
+        return Collections.unmodifiableCollection(elections.values());
+    }
+
+    public int getElectionCount() {
+        return elections.size();
+    }
+
+    // Completes with the election's reply to the voter, empty if there's none or the election isn't hosted here.
+    public CompletableFuture<Optional<String>> receiveVote(final String electionId, final String message, final Voter voter) {
+        final Election<?> election = elections.get(electionId);
+        if (election == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return CompletableFuture.supplyAsync(() -> election.receiveVote(message, voter), getShard(electionId));
+    }
+
+    /**
+     * Hands a chat line to every election registered under the voter's route, each on its own shard. Completes with
+     * the replies of the elections that had one.
+     */
+    public CompletableFuture<List<String>> receiveVote(final String message, final Voter voter) {
+        final String route = voteRouter.apply(voter);
+        final Set<String> electionIds = route == null ? null : routeToElectionIds.get(route);
+        if (electionIds == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        final List<CompletableFuture<Optional<String>>> replies = new ArrayList<>();
+        electionIds.forEach(electionId -> replies.add(receiveVote(electionId, message, voter)));
+
+        return CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            final List<String> replyMessages = new ArrayList<>();
+            replies.forEach(reply -> reply.join().ifPresent(replyMessages::add));
+            return replyMessages;
+        });
+    }
+
+    /**
+     * Stops hosting every election whose expiration date is at or before now and decides each on its own shard. They
+     * are then archived in one registry call on a separate thread, along with any whose archive failed before; a failed
+     * archive is logged and retried next time. Completes with the newly expired elections once the archive was tried.
+     */
+    public CompletableFuture<List<Election<?>>> expireElections(final long now) {
+        final List<CompletableFuture<Election<?>>> outcomes = new ArrayList<>();
+
+        elections.forEach((electionId, election) -> {
+            if (election.getExpirationDate() > now || !elections.remove(electionId, election)) {
+                return;
+            }
+            unroute(electionId);
+            outcomes.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    election.executeOutcome();
+                } catch (final Exception ex) {
+                    log.warn("Exception deciding election {}", electionId, ex);
+                }
+                return election;
+            }, getShard(electionId)));
+        });
+
+        return CompletableFuture.allOf(outcomes.toArray(new CompletableFuture[0])).thenApplyAsync(ignored -> {
+            final List<Election<?>> expired = new ArrayList<>(outcomes.size());
+            outcomes.forEach(outcome -> expired.add(outcome.join()));
+
+            archive(expired);
+            log.info("Expired {} elections, {} still running.", expired.size(), elections.size());
+            return expired;
+        }, archiveExecutor);
+    }
+
+    public synchronized int getUnarchivedCount() {
+        return unarchivedElections.size();
+    }
+
+    // Only runs on archiveExecutor, so the lock is never held over the registry call.
+    private void archive(final List<Election<?>> expired) {
+        if (electionRegistry == null) {
+            return;
+        }
+
+        final List<Election<?>> toArchive;
+        synchronized (this) {
+            unarchivedElections.addAll(expired);
+            toArchive = new ArrayList<>(unarchivedElections);
+        }
+        if (toArchive.isEmpty()) {
+            return;
+        }
+
+        try {
+            electionRegistry.archiveElections(toArchive);
+            synchronized (this) {
+                unarchivedElections.removeAll(toArchive);
+            }
+        } catch (final Exception ex) {
+            log.warn("Could not archive {} elections, will retry with the next expiry.", toArchive.size(), ex);
+        }
+    }
+
+    private void unroute(final String electionId) {
+        final String route = electionIdToRoute.remove(electionId);
+        if (route == null) {
+            return;
+        }
+        routeToElectionIds.computeIfPresent(route, (key, electionIds) -> {
+            electionIds.remove(electionId);
+            return electionIds.isEmpty() ? null : electionIds;
+        });
+    }
+
+    private ExecutorService getShard(final String electionId) {
+        final int hash = electionId.hashCode();
+        return shards[((hash ^ (hash >>> 16)) & 0x7fffffff) % shards.length];
+    }
+
+}
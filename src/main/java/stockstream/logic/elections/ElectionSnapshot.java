@@ -0,0 +1,26 @@
+package stockstream.logic.elections;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An election's state at one moment, taken from a single pass over its tally.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ElectionSnapshot<T> {
+
+    private final String topic;
+    private final String electionId;
+    private final long expirationDate;
+    private final long rank;
+    private final Map<T, Integer> candidateToVoteCount;
+    // Every candidate with votes or an outcome.
+    private final Set<T> candidates;
+
+}
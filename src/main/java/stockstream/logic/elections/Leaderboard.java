@@ -0,0 +1,196 @@
+package stockstream.logic.elections;
+
+import com.google.common.hash.Hashing;
+import stockstream.database.ElectionVoteCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Vote counts kept in rank order. Candidates get dense int ids and the ranking is an array of ids sorted by count, with
+ * each run of equal counts stored as a block; a vote moves its candidate to the edge of its block and across into the
+ * next one, so increments and decrements are O(1) and don't allocate.
+ *
+ * Ties are ordered by a priority drawn from the seed and the candidate's stored encoding, never from the order the
+ * candidates showed up in, so the same seed and the same votes always give the same ranking however the votes were
+ * loaded. Not thread safe, callers synchronize.
+ */
+public class Leaderboard<T> {
+
+    private final long seed;
+
+    private final Map<T, Integer> candidateToId = new HashMap<>();
+    private final List<T> idToCandidate = new ArrayList<>();
+    private final List<String> idToKey = new ArrayList<>();
+
+    private int[] counts = new int[16];
+    private long[] priorities = new long[16];
+    // order[rank] is the id at that rank, position[id] is the id's rank.
+    private int[] order = new int[16];
+    private int[] position = new int[16];
+    // Ranks [blockStart[c], blockStart[c] + blockSize[c]) hold the ids with count c.
+    private int[] blockStart = new int[16];
+    private int[] blockSize = new int[16];
+
+    public Leaderboard(final long seed) {
+        this.seed = seed;
+    }
+
+    public int size() {
+        return idToCandidate.size();
+    }
+
+    public int getCount(final T candidate) {
+        final Integer id = candidateToId.get(candidate);
+        return id == null ? 0 : counts[id];
+    }
+
+    public void increment(final T candidate) {
+        final int id = getOrAddId(candidate);
+        final int count = counts[id];
+        ensureCountCapacity(count + 1);
+
+        // Swap to the front of this count's block, which then becomes the back of the next count's block.
+        final int front = blockStart[count];
+        swap(position[id], front);
+        blockStart[count] = front + 1;
+        --blockSize[count];
+
+        if (blockSize[count + 1] == 0) {
+            blockStart[count + 1] = front;
+        }
+        ++blockSize[count + 1];
+        counts[id] = count + 1;
+    }
+
+    public void decrement(final T candidate) {
+        final Integer id = candidateToId.get(candidate);
+        if (id == null || counts[id] == 0) {
+            return;
+        }
+        final int count = counts[id];
+
+        final int back = blockStart[count] + blockSize[count] - 1;
+        swap(position[id], back);
+        --blockSize[count];
+
+        blockStart[count - 1] = back;
+        ++blockSize[count - 1];
+        counts[id] = count - 1;
+    }
+
+    /**
+     * The k candidates with the most votes, best first, leaving out candidates with none. Whole blocks are sorted by
+     * priority and the block that straddles k is narrowed down with a k-sized heap, so this costs O(k log k) plus one
+     * pass over that last block.
+     */
+    public List<T> getTop(final int k) {
+        final List<T> top = new ArrayList<>(Math.min(k, size()));
+
+        int rank = 0;
+        while (top.size() < k && rank < size()) {
+            final int count = counts[order[rank]];
+            if (count == 0) {
+                break;
+            }
+            final int start = blockStart[count];
+            final int end = start + blockSize[count];
+            final int wanted = k - top.size();
+
+            if (end - start <= wanted) {
+                final Integer[] ids = new Integer[end - start];
+                for (int i = start; i < end; ++i) {
+                    ids[i - start] = order[i];
+                }
+                Arrays.sort(ids, this::compareTies);
+                for (final int id : ids) {
+                    top.add(idToCandidate.get(id));
+                }
+            } else {
+                final PriorityQueue<Integer> best = new PriorityQueue<>(wanted, (a, b) -> compareTies(b, a));
+                for (int i = start; i < end; ++i) {
+                    best.add(order[i]);
+                    if (best.size() > wanted) {
+                        best.poll();
+                    }
+                }
+                final Integer[] ids = best.toArray(new Integer[0]);
+                Arrays.sort(ids, this::compareTies);
+                for (final int id : ids) {
+                    top.add(idToCandidate.get(id));
+                }
+            }
+            rank = end;
+        }
+
+        return top;
+    }
+
+    // Every candidate with at least one vote, best first.
+    public List<T> getRanking() {
+        return getTop(size());
+    }
+
+    private int compareTies(final int a, final int b) {
+        final int byPriority = Long.compare(priorities[b], priorities[a]);
+        return byPriority != 0 ? byPriority : idToKey.get(a).compareTo(idToKey.get(b));
+    }
+
+    private int getOrAddId(final T candidate) {
+        final Integer existingId = candidateToId.get(candidate);
+        if (existingId != null) {
+            return existingId;
+        }
+
+        final int id = idToCandidate.size();
+        if (id == order.length) {
+            final int capacity = order.length * 2;
+            counts = Arrays.copyOf(counts, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            order = Arrays.copyOf(order, capacity);
+            position = Arrays.copyOf(position, capacity);
+        }
+        final String key = ElectionVoteCodec.encodeCandidate(candidate);
+        candidateToId.put(candidate, id);
+        idToCandidate.add(candidate);
+        idToKey.add(key);
+
+        priorities[id] = mix(seed ^ Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong());
+        order[id] = id;
+        position[id] = id;
+        if (blockSize[0] == 0) {
+            blockStart[0] = id;
+        }
+        ++blockSize[0];
+        return id;
+    }
+
+    private void ensureCountCapacity(final int count) {
+        if (count >= blockStart.length) {
+            blockStart = Arrays.copyOf(blockStart, blockStart.length * 2);
+            blockSize = Arrays.copyOf(blockSize, blockSize.length * 2);
+        }
+    }
+
+    private void swap(final int rankA, final int rankB) {
+        final int idA = order[rankA];
+        final int idB = order[rankB];
+        order[rankA] = idB;
+        order[rankB] = idA;
+        position[idB] = rankA;
+        position[idA] = rankB;
+    }
+
+    // SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,34 @@
+package stockstream.logic.elections;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published through PubSub when an election's top candidates change. Standings always hold the whole top-K,
+ * changedRanks says which of those ranks differ from the previous update so displays can redraw only those.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class LeaderboardUpdate {
+
+    private final String topic;
+    private final String electionId;
+    // Increases by one per update of the same election.
+    private final long sequence;
+    private final List<Standing> standings;
+    private final List<Integer> changedRanks;
+
+    @Data
+    @AllArgsConstructor
+    public static class Standing {
+        private final Object candidate;
+        private final String label;
+        private final int votes;
+    }
+
+}
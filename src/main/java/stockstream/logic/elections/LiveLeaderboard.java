@@ -0,0 +1,122 @@
+package stockstream.logic.elections;
+
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
+import stockstream.logic.PubSub;
+import stockstream.logic.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Publishes an election's top-K as LeaderboardUpdates, at most once per interval. A vote inside the interval schedules
+ * one trailing publish at its end so the last change is never lost; nothing is published if the top-K didn't change.
+ * Publishing never blocks, so a slow reader can't hold up the thread that received the vote.
+ */
+@Slf4j
+public class LiveLeaderboard {
+
+    private final String topic;
+    private final Supplier<String> electionIdSupplier;
+    private final Supplier<List<LeaderboardUpdate.Standing>> standingsSupplier;
+    private final PubSub pubSub;
+    private final Scheduler scheduler;
+    private final long minIntervalMillis;
+
+    // Guarded by this.
+    private long lastPublishMillis = 0;
+    private boolean trailingPublishScheduled = false;
+    private String lastElectionId = null;
+    private List<LeaderboardUpdate.Standing> lastStandings = Collections.emptyList();
+    private LeaderboardUpdate latestUpdate = null;
+    private long sequence = 0;
+
+    public LiveLeaderboard(final String topic,
+                           final Supplier<String> electionIdSupplier,
+                           final Supplier<List<LeaderboardUpdate.Standing>> standingsSupplier,
+                           final PubSub pubSub,
+                           final Scheduler scheduler,
+                           final long minIntervalMillis) {
+        this.topic = topic;
+        this.electionIdSupplier = electionIdSupplier;
+        this.standingsSupplier = standingsSupplier;
+        this.pubSub = pubSub;
+        this.scheduler = scheduler;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    // The last update published, for readers that start watching between updates.
+    public synchronized Optional<LeaderboardUpdate> getLatestUpdate() {
+        return Optional.ofNullable(latestUpdate);
+    }
+
+    public void onVote() {
+        final long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (trailingPublishScheduled) {
+                return;
+            }
+            final long waitMillis = lastPublishMillis + minIntervalMillis - now;
+            if (waitMillis > 0) {
+                trailingPublishScheduled = true;
+                scheduler.scheduleJob(this::publishTrailing, new DateTime(now + waitMillis));
+                return;
+            }
+            lastPublishMillis = now;
+        }
+
+        publishIfChanged();
+    }
+
+    private void publishTrailing() {
+        synchronized (this) {
+            trailingPublishScheduled = false;
+            lastPublishMillis = System.currentTimeMillis();
+        }
+
+        publishIfChanged();
+    }
+
+    private void publishIfChanged() {
+        final String electionId = electionIdSupplier.get();
+        final List<LeaderboardUpdate.Standing> standings = standingsSupplier.get();
+        final LeaderboardUpdate update;
+
+        synchronized (this) {
+            // A new round starts from an empty board, so every rank counts as changed.
+            if (!electionId.equals(lastElectionId)) {
+                lastElectionId = electionId;
+                lastStandings = Collections.emptyList();
+                sequence = 0;
+            }
+            if (standings.equals(lastStandings)) {
+                return;
+            }
+
+            final List<Integer> changedRanks = new ArrayList<>();
+            for (int rank = 0; rank < Math.max(standings.size(), lastStandings.size()); ++rank) {
+                final LeaderboardUpdate.Standing standing = rank < standings.size() ? standings.get(rank) : null;
+                final LeaderboardUpdate.Standing lastStanding = rank < lastStandings.size() ? lastStandings.get(rank) : null;
+                if (!Objects.equals(standing, lastStanding)) {
+                    changedRanks.add(rank);
+                }
+            }
+
+            lastStandings = standings;
+            latestUpdate = new LeaderboardUpdate(topic, electionId, ++sequence, standings, changedRanks);
+            update = latestUpdate;
+        }
+
+        pubSub.publishKeyedAsync(LeaderboardUpdate.class, electionId, update).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.warn(throwable.getMessage(), throwable);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,77 @@
+package stockstream.logic.elections;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Lets through messages that start with one of the given keywords, ignoring case and leading whitespace, e.g. the
+ * commands an election's parser understands. Checking a message walks at most one trie branch and doesn't allocate.
+ */
+public class PrefixTriePrefilter implements VotePrefilter {
+
+    private final Node root = new Node();
+
+    public PrefixTriePrefilter(final Collection<String> keywords) {
+        keywords.forEach(this::addKeyword);
+    }
+
+    @Override
+    public boolean mightBeVote(final String message) {
+        if (message == null) {
+            return false;
+        }
+
+        int index = 0;
+        while (index < message.length() && Character.isWhitespace(message.charAt(index))) {
+            ++index;
+        }
+
+        Node node = root;
+        while (!node.terminal) {
+            if (index == message.length()) {
+                return false;
+            }
+            node = node.getChild(Character.toLowerCase(message.charAt(index++)));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addKeyword(final String keyword) {
+        Node node = root;
+        for (int i = 0; i < keyword.length(); ++i) {
+            node = node.getOrAddChild(Character.toLowerCase(keyword.charAt(i)));
+        }
+        node.terminal = true;
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal = false;
+
+        private Node getChild(final char key) {
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(final char key) {
+            final Node existing = getChild(key);
+            if (existing != null) {
+                return existing;
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = key;
+            children[children.length - 1] = new Node();
+            return children[children.length - 1];
+        }
+    }
+
+}
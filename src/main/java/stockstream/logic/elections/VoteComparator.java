@@ -2,11 +2,11 @@ package stockstream.logic.elections;
 
 import lombok.Data;
 import stockstream.data.Voter;
-import stockstream.util.RandomUtil;
 
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -26,11 +26,16 @@ public class VoteComparator<T> implements Comparator<T> {
         final Integer o1Votes = candidateToVoters.getOrDefault(o1, Collections.emptySet()).size();
         final Integer o2Votes = candidateToVoters.getOrDefault(o2, Collections.emptySet()).size();
 
-        if (o2Votes.equals(o1Votes)) {
-            return RandomUtil.choice(-1, 1);
+        if (!o2Votes.equals(o1Votes)) {
+            return o2Votes.compareTo(o1Votes);
+        }
+        if (Objects.equals(o1, o2)) {
+            return 0;
         }
 
-        return o2Votes.compareTo(o1Votes);
+        // Ties need a fixed order, a comparator that answers differently each time corrupts the TreeMap using it.
+        final int byName = String.valueOf(o1).compareTo(String.valueOf(o2));
+        return byName != 0 ? byName : Integer.compare(Objects.hashCode(o1), Objects.hashCode(o2));
     }
 
 }
@@ -0,0 +1,11 @@
+package stockstream.logic.elections;
+
+/**
+ * Cheap check run on every chat message before the election parses it. Returning false drops the message, so an
+ * implementation may let through messages that aren't votes but must never reject one that is.
+ */
+public interface VotePrefilter {
+
+    boolean mightBeVote(final String message);
+
+}
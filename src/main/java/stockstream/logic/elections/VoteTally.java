@@ -0,0 +1,110 @@
+package stockstream.logic.elections;
+
+import lombok.Getter;
+import stockstream.data.Voter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory copy of one election's votes. Each voter counts once, for their latest candidate, the same as the
+ * ElectionVotes table where a vote is keyed by election and player. Rankings come from a Leaderboard seeded with the
+ * election id, so ties always break the same way for the same election.
+ */
+public class VoteTally<T> {
+
+    @Getter
+    private final String electionId;
+
+    // Guarded by this.
+    private final Map<Voter, T> voterToCandidate = new HashMap<>();
+    private final Map<T, Set<Voter>> candidateToVoters = new HashMap<>();
+    private final Leaderboard<T> leaderboard;
+
+    public VoteTally(final String electionId) {
+        this.electionId = electionId;
+        this.leaderboard = new Leaderboard<>(electionId.hashCode());
+    }
+
+    public synchronized void recordVote(final Voter voter, final T candidate) {
+        final T previousCandidate = voterToCandidate.put(voter, candidate);
+
+        if (previousCandidate != null && !previousCandidate.equals(candidate)) {
+            final Set<Voter> previousVoters = candidateToVoters.get(previousCandidate);
+            previousVoters.remove(voter);
+            if (previousVoters.isEmpty()) {
+                candidateToVoters.remove(previousCandidate);
+            }
+            leaderboard.decrement(previousCandidate);
+        }
+        if (!candidate.equals(previousCandidate)) {
+            leaderboard.increment(candidate);
+        }
+
+        final Set<Voter> voters = candidateToVoters.computeIfAbsent(candidate, set -> new HashSet<>());
+        // Replace rather than keep the old entry, the voter's channel or subscription may have changed.
+        voters.remove(voter);
+        voters.add(voter);
+    }
+
+    public synchronized int getVoterCount() {
+        return voterToCandidate.size();
+    }
+
+    public synchronized Map<T, Integer> getCandidateToVoteCount() {
+        final Map<T, Integer> candidateToVoteCount = new HashMap<>(candidateToVoters.size() * 2);
+        candidateToVoters.forEach((candidate, voters) -> candidateToVoteCount.put(candidate, voters.size()));
+        return Collections.unmodifiableMap(candidateToVoteCount);
+    }
+
+    public synchronized Map<T, Set<Voter>> getCandidateToVoters() {
+        final Map<T, Set<Voter>> candidateToVotersCopy = new HashMap<>(candidateToVoters.size() * 2);
+        candidateToVoters.forEach((candidate, voters) -> candidateToVotersCopy.put(candidate, new HashSet<>(voters)));
+        return Collections.unmodifiableMap(candidateToVotersCopy);
+    }
+
+    public synchronized List<T> getTopCandidates(final int k) {
+        return leaderboard.getTop(k);
+    }
+
+    public synchronized List<LeaderboardUpdate.Standing> getTopStandings(final int k) {
+        final List<LeaderboardUpdate.Standing> standings = new ArrayList<>(k);
+        leaderboard.getTop(k).forEach(candidate -> {
+            final String label = candidate instanceof Candidate ? ((Candidate) candidate).getLabel() : String.valueOf(candidate);
+            standings.add(new LeaderboardUpdate.Standing(candidate, label, leaderboard.getCount(candidate)));
+        });
+        return standings;
+    }
+
+    public synchronized Optional<T> getWinningCandidate() {
+        return leaderboard.getTop(1).stream().findFirst();
+    }
+
+    public synchronized SortedMap<T, Set<Voter>> getSortedCandidateToVoters() {
+        final List<T> ranking = leaderboard.getRanking();
+
+        final Map<T, Integer> candidateToRank = new HashMap<>(ranking.size() * 2);
+        for (int rank = 0; rank < ranking.size(); ++rank) {
+            candidateToRank.put(ranking.get(rank), rank);
+        }
+
+        final SortedMap<T, Set<Voter>> sortedCandidateToVoters =
+                new TreeMap<>(Comparator.comparingInt(candidate -> candidateToRank.getOrDefault(candidate, Integer.MAX_VALUE)));
+        ranking.forEach(candidate -> sortedCandidateToVoters.put(candidate, new HashSet<>(candidateToVoters.get(candidate))));
+        return sortedCandidateToVoters;
+    }
+
+    public synchronized Map<Voter, T> getVoterToCandidate() {
+        return new HashMap<>(voterToCandidate);
+    }
+
+}
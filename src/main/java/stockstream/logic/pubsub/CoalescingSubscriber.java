@@ -0,0 +1,116 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects events and hands them to the handler as one batch once no event arrived for the debounce window, or
+ * once the oldest pending event has waited for the max latency. Invocations never overlap, events arriving while
+ * the handler runs go into the next batch.
+ */
+@Slf4j
+public class CoalescingSubscriber implements Subscriber {
+
+    @Getter
+    private final String name;
+
+    private final Consumer<List<Object>> handler;
+    private final long debounceNanos;
+    private final long maxLatencyNanos;
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+
+    private List<Object> pendingEvents = new ArrayList<>();
+    private long firstEventNanos = 0;
+    private long lastEventNanos = 0;
+    private boolean flushScheduled = false;
+    private boolean running = false;
+
+    public CoalescingSubscriber(final String name,
+                                final Consumer<List<Object>> handler,
+                                final long debounceWindow,
+                                final long maxLatency,
+                                final TimeUnit unit,
+                                final ScheduledExecutorService timer,
+                                final Executor executor) {
+        this.name = name;
+        this.handler = handler;
+        this.debounceNanos = unit.toNanos(debounceWindow);
+        this.maxLatencyNanos = Math.max(unit.toNanos(maxLatency), debounceNanos);
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    @Override
+    public void deliver(final PendingEvent event) {
+        synchronized (lock) {
+            final long now = System.nanoTime();
+            if (pendingEvents.isEmpty()) {
+                firstEventNanos = now;
+            }
+            pendingEvents.add(event.getPayload());
+            lastEventNanos = now;
+
+            if (!flushScheduled && !running) {
+                scheduleFlush(debounceNanos);
+            }
+        }
+    }
+
+    private void onTimer() {
+        final List<Object> batch;
+
+        synchronized (lock) {
+            flushScheduled = false;
+            if (running || pendingEvents.isEmpty()) {
+                return;
+            }
+
+            final long remainingNanos = getFlushDueNanos() - System.nanoTime();
+            if (remainingNanos > 0) {
+                scheduleFlush(remainingNanos);
+                return;
+            }
+
+            batch = pendingEvents;
+            pendingEvents = new ArrayList<>();
+            running = true;
+        }
+
+        executor.execute(() -> runHandler(batch));
+    }
+
+    private void runHandler(final List<Object> batch) {
+        try {
+            handler.accept(batch);
+        } catch (final Exception e) {
+            log.warn(e.getMessage(), e);
+        } finally {
+            synchronized (lock) {
+                running = false;
+                if (!pendingEvents.isEmpty() && !flushScheduled) {
+                    scheduleFlush(Math.max(0, getFlushDueNanos() - System.nanoTime()));
+                }
+            }
+        }
+    }
+
+    private long getFlushDueNanos() {
+        return Math.min(lastEventNanos + debounceNanos, firstEventNanos + maxLatencyNanos);
+    }
+
+    private void scheduleFlush(final long delayNanos) {
+        flushScheduled = true;
+        timer.schedule(this::onTimer, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
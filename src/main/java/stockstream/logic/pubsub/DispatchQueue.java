@@ -0,0 +1,174 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring of events waiting for delivery. At most one drainer owns the queue at a time, so events leave it
+ * in the order they were accepted.
+ */
+@Slf4j
+public class DispatchQueue {
+
+    public enum OfferResult {
+        // Accepted, and the caller now owns draining the queue.
+        SCHEDULE_DRAIN,
+        // Accepted, an existing drainer will deliver it.
+        QUEUED,
+        // Not accepted because the queue is full and waiting wasn't allowed.
+        FULL
+    }
+
+    @Getter
+    private final OverflowPolicy overflowPolicy;
+
+    private final PendingEvent[] ring;
+    private final Consumer<PendingEvent> onDrop;
+
+    // Events offered with offerOrPark while a BLOCK queue was full, moved into the ring as the drainer frees space.
+    private final Deque<PendingEvent> parked = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    private int head = 0;
+    private int size = 0;
+    private boolean draining = false;
+
+    public DispatchQueue(final int capacity, final OverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, event -> { });
+    }
+
+    public DispatchQueue(final int capacity, final OverflowPolicy overflowPolicy, final Consumer<PendingEvent> onDrop) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("DispatchQueue capacity must be positive: " + capacity);
+        }
+        this.ring = new PendingEvent[capacity];
+        this.overflowPolicy = overflowPolicy;
+        this.onDrop = onDrop;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getParkedCount() {
+        lock.lock();
+        try {
+            return parked.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like offer without waiting, except that a full BLOCK queue keeps the event aside instead of refusing it. Nothing
+     * waits on a thread for the space, the drainer moves parked events in, in order, as it polls.
+     */
+    public OfferResult offerOrPark(final PendingEvent event) {
+        lock.lock();
+        try {
+            // A full queue always has a drainer, and anything parked must go in after what was parked before it.
+            if (overflowPolicy == OverflowPolicy.BLOCK && (size == ring.length || !parked.isEmpty())) {
+                parked.addLast(event);
+                return OfferResult.QUEUED;
+            }
+            return offer(event, false);
+        } catch (final InterruptedException e) {
+            // offer only waits when asked to.
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public OfferResult offer(final PendingEvent event, final boolean waitForSpace) throws InterruptedException {
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                switch (overflowPolicy) {
+                    case BLOCK: {
+                        if (!waitForSpace) {
+                            return OfferResult.FULL;
+                        }
+                        while (size == ring.length) {
+                            notFull.await();
+                        }
+                        break;
+                    } case DROP_OLDEST: {
+                        final PendingEvent droppedEvent = removeHead();
+                        log.debug("Dropping event {} of type {} because the queue is full.", droppedEvent.getPayload(), droppedEvent.getType());
+                        droppedEvent.getCompletion().cancel(false);
+                        onDrop.accept(droppedEvent);
+                        break;
+                    } case COALESCE: {
+                        final int newestIndex = (head + size - 1) % ring.length;
+                        final PendingEvent replacedEvent = ring[newestIndex];
+                        ring[newestIndex] = event;
+                        replacedEvent.completeWith(event);
+                        onDrop.accept(replacedEvent);
+                        return OfferResult.QUEUED;
+                    }
+                }
+            }
+
+            ring[(head + size) % ring.length] = event;
+            ++size;
+
+            if (draining) {
+                return OfferResult.QUEUED;
+            }
+            draining = true;
+            return OfferResult.SCHEDULE_DRAIN;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the next event for the drainer, or null after releasing ownership of an empty queue.
+     */
+    public PendingEvent poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                draining = false;
+                return null;
+            }
+            final PendingEvent event = removeHead();
+            if (!parked.isEmpty()) {
+                ring[(head + size) % ring.length] = parked.removeFirst();
+                ++size;
+            } else {
+                notFull.signal();
+            }
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PendingEvent removeHead() {
+        final PendingEvent event = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        --size;
+        return event;
+    }
+
+}
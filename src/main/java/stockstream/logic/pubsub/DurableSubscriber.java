@@ -0,0 +1,108 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Subscriber that first replays journaled events after its last checkpoint and then continues with live events,
+ * checkpointing each one it handles. Live events that arrive during the replay are held back and deduplicated
+ * against it. An event is checkpointed even if the handler throws on it, so a poison event is delivered at most once
+ * instead of holding the checkpoint back for good.
+ */
+@Slf4j
+public class DurableSubscriber implements Subscriber {
+
+    @Getter
+    private final String name;
+
+    private final EventJournal journal;
+    private final Consumer<Object> handler;
+
+    private final Object lock = new Object();
+    private List<PendingEvent> heldEvents = new ArrayList<>();
+    private boolean replaying = true;
+    private volatile long replayedSequence = Long.MAX_VALUE;
+
+    public DurableSubscriber(final String subscriberId, final EventJournal journal, final Consumer<Object> handler) {
+        this.name = subscriberId;
+        this.journal = journal;
+        this.handler = handler;
+    }
+
+    @Override
+    public void deliver(final PendingEvent event) {
+        synchronized (lock) {
+            if (replaying) {
+                heldEvents.add(event);
+                return;
+            }
+        }
+        handleLive(event);
+    }
+
+    // Must be called once, after the subscriber is registered so no live event is missed.
+    public void replay() {
+        boolean replayed = false;
+        try {
+            replayedSequence = journal.replay(journal.openCheckpoint(name), (sequence, payload) -> handleQuietly(() -> handle(sequence, payload)));
+            journal.checkpointThrough(name, replayedSequence);
+            replayed = true;
+        } catch (final RuntimeException ex) {
+            log.warn("Durable subscriber {} could not finish its replay, the events left over replay on the next start.", name, ex);
+        } finally {
+            // Nothing counts as replayed unless the replay finished, so held and later live events are all handled.
+            if (!replayed) {
+                replayedSequence = 0;
+            }
+            deliverHeldEvents();
+        }
+    }
+
+    private void deliverHeldEvents() {
+        while (true) {
+            final List<PendingEvent> events;
+            synchronized (lock) {
+                if (heldEvents.isEmpty()) {
+                    replaying = false;
+                    return;
+                }
+                events = heldEvents;
+                heldEvents = new ArrayList<>();
+            }
+            events.forEach(event -> handleQuietly(() -> handleLive(event)));
+        }
+    }
+
+    private void handleQuietly(final Runnable handle) {
+        try {
+            handle.run();
+        } catch (final Exception ex) {
+            log.warn("Durable subscriber {} failed to handle an event, skipping it.", name, ex);
+        }
+    }
+
+    private void handleLive(final PendingEvent event) {
+        // Events of other types reach this subscriber through the type hierarchy and aren't journaled.
+        if (event.getSequence() == 0) {
+            handler.accept(event.getPayload());
+            return;
+        }
+        if (event.getSequence() <= replayedSequence) {
+            return;
+        }
+        handle(event.getSequence(), event.getPayload());
+    }
+
+    private void handle(final long sequence, final Object payload) {
+        try {
+            handler.accept(payload);
+        } finally {
+            journal.checkpoint(name, sequence);
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import stockstream.util.JSONUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Append-only journal of the events published for one class type, stored as a memory-mapped file split into fixed
+ * size segments. Each record is [length][sequence][JSON payload] and the length is written last, so a record is
+ * either fully visible or not at all. Appends only copy into the mapping; flush() forces everything written since
+ * the previous flush to disk in one go, along with subscriber checkpoints.
+ */
+@Slf4j
+public class EventJournal {
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int SEGMENT_END = -1;
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    @Getter
+    private final Class<?> type;
+
+    private final File directory;
+    private final FileChannel channel;
+    private final int segmentBytes;
+
+    // Guarded by this.
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Set<MappedByteBuffer> unflushedSegments = new LinkedHashSet<>();
+    private MappedByteBuffer writeSegment;
+    private long lastSequence = 0;
+
+    private final Map<String, Long> checkpoints = new ConcurrentHashMap<>();
+    private final Set<String> dirtyCheckpoints = ConcurrentHashMap.newKeySet();
+
+    // Guarded by checkpointLock. A checkpoint only covers a contiguous run of resolved sequences, anything resolved
+    // above a gap waits here until the gap closes.
+    private final Object checkpointLock = new Object();
+    private final Set<String> activeSubscribers = new HashSet<>();
+    private final Map<String, NavigableSet<Long>> resolvedAboveCheckpoint = new HashMap<>();
+
+    public EventJournal(final Class<?> type, final File directory, final int segmentBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+
+        this.type = type;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.channel = FileChannel.open(new File(directory, type.getName() + ".journal").toPath(),
+                                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        recover();
+        loadCheckpoints();
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // Returns the sequence number assigned to the event.
+    public synchronized long append(final Object payload) {
+        final byte[] bytes = JSONUtil.serializeObject(payload).orElse("null").getBytes(StandardCharsets.UTF_8);
+        final int recordBytes = HEADER_BYTES + bytes.length;
+
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException(String.format("Event of %s bytes does not fit a %s byte journal segment.", recordBytes, segmentBytes));
+        }
+
+        if (writeSegment.remaining() < recordBytes) {
+            if (writeSegment.remaining() >= Integer.BYTES) {
+                writeSegment.putInt(writeSegment.position(), SEGMENT_END);
+            }
+            writeSegment = mapSegment(segments.size());
+        }
+
+        final long sequence = lastSequence + 1;
+        final int position = writeSegment.position();
+
+        writeSegment.putLong(position + Integer.BYTES, sequence);
+        for (int i = 0; i < bytes.length; ++i) {
+            writeSegment.put(position + HEADER_BYTES + i, bytes[i]);
+        }
+        writeSegment.putInt(position, bytes.length);
+        writeSegment.position(position + recordBytes);
+
+        unflushedSegments.add(writeSegment);
+        lastSequence = sequence;
+
+        return sequence;
+    }
+
+    /**
+     * Passes every event with a sequence above afterSequence, up to the last one appended before the call, to the
+     * consumer in order. Returns the sequence of the last event the journal held when the replay started.
+     */
+    public long replay(final long afterSequence, final BiConsumer<Long, Object> consumer) {
+        final List<ByteBuffer> readSegments = new ArrayList<>();
+        final long replayUntil;
+
+        synchronized (this) {
+            for (final MappedByteBuffer segment : segments) {
+                final ByteBuffer readSegment = segment.duplicate();
+                readSegment.limit(segment == writeSegment ? writeSegment.position() : segment.capacity());
+                readSegment.position(0);
+                readSegments.add(readSegment);
+            }
+            replayUntil = lastSequence;
+        }
+
+        for (final ByteBuffer segment : readSegments) {
+            while (segment.remaining() >= HEADER_BYTES) {
+                final int length = segment.getInt();
+                if (length == SEGMENT_END || length == 0) {
+                    break;
+                }
+                final long sequence = segment.getLong();
+                final byte[] bytes = new byte[length];
+                segment.get(bytes);
+
+                if (sequence <= afterSequence || sequence > replayUntil) {
+                    continue;
+                }
+
+                final Optional<?> payload = JSONUtil.deserializeObject(new String(bytes, StandardCharsets.UTF_8), type);
+                if (payload.isPresent()) {
+                    consumer.accept(sequence, payload.get());
+                } else {
+                    log.warn("Skipping unreadable {} journal event {}.", type.getSimpleName(), sequence);
+                }
+            }
+        }
+
+        return replayUntil;
+    }
+
+    public long getCheckpoint(final String subscriberId) {
+        return checkpoints.getOrDefault(subscriberId, 0L);
+    }
+
+    /**
+     * Marks a durable subscriber as live in this process, so events the bus drops from now on count as resolved for
+     * it. Returns its checkpoint.
+     */
+    public long openCheckpoint(final String subscriberId) {
+        synchronized (checkpointLock) {
+            activeSubscribers.add(subscriberId);
+            return getCheckpoint(subscriberId);
+        }
+    }
+
+    // Handled events can arrive out of order, the checkpoint only moves once every sequence below is resolved.
+    public void checkpoint(final String subscriberId, final long sequence) {
+        synchronized (checkpointLock) {
+            resolve(subscriberId, sequence);
+        }
+    }
+
+    // Everything up to the sequence is resolved, e.g. after a replay that skipped unreadable events.
+    public void checkpointThrough(final String subscriberId, final long sequence) {
+        synchronized (checkpointLock) {
+            final NavigableSet<Long> resolved = resolvedAboveCheckpoint.get(subscriberId);
+            if (resolved != null) {
+                resolved.headSet(sequence, true).clear();
+            }
+            if (sequence > getCheckpoint(subscriberId)) {
+                advanceCheckpoint(subscriberId, sequence);
+            }
+        }
+    }
+
+    /**
+     * An event dropped or coalesced by the overflow policy never reaches subscribers, but must not hold their
+     * checkpoints back forever either. Only subscribers live in this process are affected; one that isn't will
+     * still replay the event.
+     */
+    public void resolveDropped(final long sequence) {
+        synchronized (checkpointLock) {
+            for (final String subscriberId : activeSubscribers) {
+                resolve(subscriberId, sequence);
+            }
+        }
+    }
+
+    private void resolve(final String subscriberId, final long sequence) {
+        final long checkpoint = getCheckpoint(subscriberId);
+        if (sequence <= checkpoint) {
+            return;
+        }
+        final NavigableSet<Long> resolved = resolvedAboveCheckpoint.computeIfAbsent(subscriberId, id -> new TreeSet<>());
+        resolved.add(sequence);
+        advanceCheckpoint(subscriberId, checkpoint);
+    }
+
+    private void advanceCheckpoint(final String subscriberId, final long fromCheckpoint) {
+        long checkpoint = fromCheckpoint;
+        final NavigableSet<Long> resolved = resolvedAboveCheckpoint.get(subscriberId);
+        while (resolved != null && !resolved.isEmpty() && resolved.first() == checkpoint + 1) {
+            checkpoint = resolved.pollFirst();
+        }
+        if (checkpoint != getCheckpoint(subscriberId)) {
+            checkpoints.put(subscriberId, checkpoint);
+            dirtyCheckpoints.add(subscriberId);
+        }
+    }
+
+    public void flush() {
+        final List<MappedByteBuffer> segmentsToForce;
+
+        synchronized (this) {
+            segmentsToForce = new ArrayList<>(unflushedSegments);
+            unflushedSegments.clear();
+        }
+
+        segmentsToForce.forEach(MappedByteBuffer::force);
+
+        for (final String subscriberId : dirtyCheckpoints) {
+            dirtyCheckpoints.remove(subscriberId);
+            try {
+                writeCheckpoint(subscriberId, getCheckpoint(subscriberId));
+            } catch (final IOException e) {
+                dirtyCheckpoints.add(subscriberId);
+                log.warn("Could not write {} journal checkpoint for {}", type.getSimpleName(), subscriberId, e);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void recover() throws IOException {
+        final long segmentCount = Math.max(1, (channel.size() + segmentBytes - 1) / segmentBytes);
+
+        for (int i = 0; i < segmentCount; ++i) {
+            final MappedByteBuffer segment = mapSegment(i);
+            writeSegment = segment;
+
+            while (segment.remaining() >= HEADER_BYTES) {
+                final int length = segment.getInt(segment.position());
+                if (length == 0) {
+                    log.info("Recovered {} journal at sequence {}.", type.getSimpleName(), lastSequence);
+                    return;
+                }
+                if (length == SEGMENT_END) {
+                    break;
+                }
+                lastSequence = segment.getLong(segment.position() + Integer.BYTES);
+                segment.position(segment.position() + HEADER_BYTES + length);
+            }
+        }
+
+        writeSegment = mapSegment(segments.size());
+    }
+
+    private MappedByteBuffer mapSegment(final int index) {
+        try {
+            final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentBytes, segmentBytes);
+            segments.add(segment);
+            return segment;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void loadCheckpoints() throws IOException {
+        final String prefix = type.getName() + ".";
+        final File[] checkpointFiles = directory.listFiles((dir, fileName) -> fileName.startsWith(prefix) && fileName.endsWith(CHECKPOINT_SUFFIX));
+
+        if (checkpointFiles == null) {
+            return;
+        }
+
+        for (final File checkpointFile : checkpointFiles) {
+            final String fileName = checkpointFile.getName();
+            final String subscriberId = fileName.substring(prefix.length(), fileName.length() - CHECKPOINT_SUFFIX.length());
+            final String sequence = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8).trim();
+            checkpoints.put(subscriberId, Long.valueOf(sequence));
+        }
+    }
+
+    private void writeCheckpoint(final String subscriberId, final long sequence) throws IOException {
+        final Path checkpointPath = new File(directory, type.getName() + "." + subscriberId + CHECKPOINT_SUFFIX).toPath();
+        final Path temporaryPath = new File(directory, type.getName() + "." + subscriberId + CHECKPOINT_SUFFIX + ".tmp").toPath();
+
+        Files.write(temporaryPath, String.valueOf(sequence).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,81 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class InMemoryPubSubMetrics implements PubSubMetrics {
+
+    @Getter
+    public static class SubscriberMetrics {
+        private final LatencyHistogram handlerLatency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowDeliveries = new LongAdder();
+    }
+
+    @Getter
+    public static class TypeMetrics {
+        private final LongAdder publishes = new LongAdder();
+        private final LongAdder drops = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final Map<String, SubscriberMetrics> subscriberMetrics = new ConcurrentHashMap<>();
+    }
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Class<?>, TypeMetrics> typeMetrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordPublish(final Class<?> type) {
+        getTypeMetrics(type).publishes.increment();
+    }
+
+    @Override
+    public void recordDrop(final Class<?> type) {
+        getTypeMetrics(type).drops.increment();
+    }
+
+    @Override
+    public void recordQueueWait(final Class<?> type, final long waitNanos) {
+        getTypeMetrics(type).queueWait.record(waitNanos);
+    }
+
+    @Override
+    public void recordDelivery(final Class<?> type, final String subscriber, final long handlerNanos) {
+        getSubscriberMetrics(type, subscriber).handlerLatency.record(handlerNanos);
+    }
+
+    @Override
+    public void recordFailure(final Class<?> type, final String subscriber, final Throwable throwable) {
+        getSubscriberMetrics(type, subscriber).failures.increment();
+    }
+
+    @Override
+    public void recordSlowSubscriber(final Class<?> type, final String subscriber, final long elapsedNanos) {
+        getSubscriberMetrics(type, subscriber).slowDeliveries.increment();
+    }
+
+    public Set<Class<?>> getTypes() {
+        return Collections.unmodifiableSet(typeMetrics.keySet());
+    }
+
+    public TypeMetrics getTypeMetrics(final Class<?> type) {
+        return typeMetrics.computeIfAbsent(type, metrics -> new TypeMetrics());
+    }
+
+    public SubscriberMetrics getSubscriberMetrics(final Class<?> type, final String subscriber) {
+        return getTypeMetrics(type).subscriberMetrics.computeIfAbsent(subscriber, metrics -> new SubscriberMetrics());
+    }
+
+    // Average publishes per second since these metrics were created.
+    public double getPublishRate(final Class<?> type) {
+        final double elapsedSeconds = (double) (System.nanoTime() - startNanos) / TimeUnit.SECONDS.toNanos(1);
+        return elapsedSeconds <= 0 ? 0 : getTypeMetrics(type).publishes.sum() / elapsedSeconds;
+    }
+
+}
@@ -0,0 +1,10 @@
+package stockstream.logic.pubsub;
+
+public enum OverflowPolicy {
+    // Publisher waits until the queue has room.
+    BLOCK,
+    // Oldest pending event is cancelled to make room for the new one.
+    DROP_OLDEST,
+    // Newest pending event is replaced by the new one, both handles complete together.
+    COALESCE
+}
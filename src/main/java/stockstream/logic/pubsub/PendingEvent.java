@@ -0,0 +1,41 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+@Getter
+public class PendingEvent {
+
+    private final Class<?> type;
+    private final Object payload;
+    // Position in the type's journal, or 0 when the type isn't journaled.
+    private final long sequence;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final long publishedNanos = System.nanoTime();
+
+    public PendingEvent(final Class<?> type, final Object payload) {
+        this(type, payload, 0);
+    }
+
+    public PendingEvent(final Class<?> type, final Object payload, final long sequence) {
+        this.type = type;
+        this.payload = payload;
+        this.sequence = sequence;
+    }
+
+    public void complete() {
+        completion.complete(null);
+    }
+
+    public void completeWith(final PendingEvent otherEvent) {
+        otherEvent.completion.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                completion.completeExceptionally(throwable);
+            } else {
+                completion.complete(null);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,21 @@
+package stockstream.logic.pubsub;
+
+/**
+ * Receives delivery measurements from PubSub. Every method defaults to doing nothing so implementations only
+ * override what they report.
+ */
+public interface PubSubMetrics {
+
+    default void recordPublish(final Class<?> type) { }
+
+    default void recordDrop(final Class<?> type) { }
+
+    default void recordQueueWait(final Class<?> type, final long waitNanos) { }
+
+    default void recordDelivery(final Class<?> type, final String subscriber, final long handlerNanos) { }
+
+    default void recordFailure(final Class<?> type, final String subscriber, final Throwable throwable) { }
+
+    default void recordSlowSubscriber(final Class<?> type, final String subscriber, final long elapsedNanos) { }
+
+}
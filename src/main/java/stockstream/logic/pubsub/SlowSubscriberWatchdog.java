@@ -0,0 +1,87 @@
+package stockstream.logic.pubsub;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks deliveries in progress and flags each one at most once when it exceeds the latency budget, either when it
+ * finishes or when a periodic scan finds it still running.
+ */
+@Slf4j
+public class SlowSubscriberWatchdog {
+
+    public static class Delivery {
+        private final Class<?> type;
+        private final String subscriber;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean flagged = new AtomicBoolean(false);
+
+        private Delivery(final Class<?> type, final String subscriber) {
+            this.type = type;
+            this.subscriber = subscriber;
+        }
+    }
+
+    @Getter
+    private volatile long budgetNanos;
+
+    @Setter
+    private volatile PubSubMetrics metrics;
+
+    private final Set<Delivery> inProgress = ConcurrentHashMap.newKeySet();
+
+    public SlowSubscriberWatchdog(final long budget, final TimeUnit unit, final PubSubMetrics metrics) {
+        this.budgetNanos = unit.toNanos(budget);
+        this.metrics = metrics;
+    }
+
+    public void setBudget(final long budget, final TimeUnit unit) {
+        this.budgetNanos = unit.toNanos(budget);
+    }
+
+    public Delivery start(final Class<?> type, final String subscriber) {
+        final Delivery delivery = new Delivery(type, subscriber);
+        inProgress.add(delivery);
+        return delivery;
+    }
+
+    // Returns how long the delivery took.
+    public long finish(final Delivery delivery) {
+        inProgress.remove(delivery);
+
+        final long elapsedNanos = System.nanoTime() - delivery.startNanos;
+        if (elapsedNanos > budgetNanos) {
+            flag(delivery, elapsedNanos);
+        }
+        return elapsedNanos;
+    }
+
+    public void scan() {
+        final long now = System.nanoTime();
+        for (final Delivery delivery : inProgress) {
+            final long elapsedNanos = now - delivery.startNanos;
+            if (elapsedNanos > budgetNanos) {
+                flag(delivery, elapsedNanos);
+            }
+        }
+    }
+
+    private void flag(final Delivery delivery, final long elapsedNanos) {
+        if (!delivery.flagged.compareAndSet(false, true)) {
+            return;
+        }
+
+        log.warn("Subscriber {} has spent {}ms on a {} event, over its {}ms budget.",
+                 delivery.subscriber, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                 delivery.type.getSimpleName(), TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+
+        metrics.recordSlowSubscriber(delivery.type, delivery.subscriber, elapsedNanos);
+    }
+
+}
@@ -0,0 +1,41 @@
+package stockstream.logic.pubsub;
+
+import java.util.function.Function;
+
+public interface Subscriber {
+
+    void deliver(final PendingEvent event);
+
+    // Identifies the subscriber in metrics and logs.
+    String getName();
+
+    static Subscriber forFunction(final Function function) {
+        return new Subscriber() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void deliver(final PendingEvent event) {
+                function.apply(event.getPayload());
+            }
+
+            @Override
+            public String getName() {
+                return function.getClass().getName();
+            }
+        };
+    }
+
+    static Subscriber forRunnable(final Runnable runnable) {
+        return new Subscriber() {
+            @Override
+            public void deliver(final PendingEvent event) {
+                runnable.run();
+            }
+
+            @Override
+            public String getName() {
+                return runnable.getClass().getName();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,84 @@
+package stockstream.logic.pubsub;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Subscriptions keyed by the class type they were registered for. Publishing resolves a type against its
+ * superclasses and interfaces once, caches the result as an array, and drops every cached table whenever a
+ * subscription changes.
+ */
+public class SubscriptionIndex {
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    // Guarded by this. Handler -> subscriber, so the same handler registered twice is delivered to once.
+    private final Map<Class<?>, Map<Object, Subscriber>> subscriptions = new HashMap<>();
+
+    private volatile ConcurrentMap<Class<?>, Subscriber[]> dispatchTables = new ConcurrentHashMap<>();
+
+    public synchronized void subscribe(final Class<?> type, final Object handler, final Subscriber subscriber) {
+        subscriptions.computeIfAbsent(type, map -> new LinkedHashMap<>()).putIfAbsent(handler, subscriber);
+        dispatchTables = new ConcurrentHashMap<>();
+    }
+
+    public synchronized void unsubscribe(final Class<?> type, final Object handler) {
+        final Map<Object, Subscriber> typeSubscriptions = subscriptions.get(type);
+        if (typeSubscriptions == null || typeSubscriptions.remove(handler) == null) {
+            return;
+        }
+        if (typeSubscriptions.isEmpty()) {
+            subscriptions.remove(type);
+        }
+        dispatchTables = new ConcurrentHashMap<>();
+    }
+
+    public Subscriber[] getSubscribers(final Class<?> type) {
+        final ConcurrentMap<Class<?>, Subscriber[]> tables = dispatchTables;
+
+        final Subscriber[] table = tables.get(type);
+        if (table != null) {
+            return table;
+        }
+
+        return tables.computeIfAbsent(type, this::resolve);
+    }
+
+    private synchronized Subscriber[] resolve(final Class<?> type) {
+        final Map<Object, Subscriber> resolved = new LinkedHashMap<>();
+
+        for (final Class<?> assignableType : getAssignableTypes(type)) {
+            subscriptions.getOrDefault(assignableType, Collections.emptyMap()).forEach(resolved::putIfAbsent);
+        }
+
+        if (resolved.isEmpty()) {
+            return NO_SUBSCRIBERS;
+        }
+        return resolved.values().toArray(new Subscriber[0]);
+    }
+
+    // The type itself, then its superclasses, then every interface they implement, then Object.
+    private static Set<Class<?>> getAssignableTypes(final Class<?> type) {
+        final Set<Class<?>> types = new LinkedHashSet<>();
+
+        for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+            types.add(superclass);
+        }
+
+        final Deque<Class<?>> pending = new ArrayDeque<>(types);
+        while (!pending.isEmpty()) {
+            for (final Class<?> superInterface : pending.poll().getInterfaces()) {
+                if (types.add(superInterface)) {
+                    pending.add(superInterface);
+                }
+            }
+        }
+
+        types.remove(Object.class);
+        types.add(Object.class);
+
+        return types;
+    }
+
+}
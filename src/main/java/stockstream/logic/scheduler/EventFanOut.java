@@ -0,0 +1,78 @@
+package stockstream.logic.scheduler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the jobs registered for one event notification. Each worker keeps taking jobs from a shared queue, so a slow job
+ * only holds up its own worker; completion counts finished jobs, so it doesn't matter how many workers got to start.
+ */
+@Slf4j
+public class EventFanOut implements Runnable {
+
+    private final Enum event;
+    private final Queue<Runnable> jobs;
+    private final AtomicInteger remaining;
+
+    // The first Error a job threw, reported through the completion once every job has finished.
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    @Getter
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public EventFanOut(final Enum event, final Collection<Runnable> jobs) {
+        this.event = event;
+        this.jobs = new ConcurrentLinkedQueue<>(jobs);
+        this.remaining = new AtomicInteger(this.jobs.size());
+
+        if (this.jobs.isEmpty()) {
+            completion.complete(null);
+        }
+    }
+
+    // Hands up to maxWorkers workers to the executor, never more than there are jobs.
+    public void start(final Executor executor, final int maxWorkers) {
+        final int workers = Math.min(maxWorkers, jobs.size());
+        for (int i = 0; i < workers; ++i) {
+            executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        Runnable job;
+        while ((job = jobs.poll()) != null) {
+            try {
+                job.run();
+            } catch (final Exception ex) {
+                log.warn("Scheduler job issue {} {} {} {}", job, event, ex.getMessage(), ex);
+            } catch (final Throwable t) {
+                // Keep going, the remaining jobs still have to run for the completion to ever fire.
+                log.warn("Scheduler job issue {} {} {} {}", job, event, t.getMessage(), t);
+                failure.compareAndSet(null, t);
+            } finally {
+                if (remaining.decrementAndGet() == 0) {
+                    complete();
+                }
+            }
+        }
+    }
+
+    private void complete() {
+        final Throwable throwable = failure.get();
+        if (throwable == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(throwable);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package stockstream.logic.scheduler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A job registered with the Scheduler. Periodic jobs schedule their next run when the current one finishes, so
+ * cancel, pause and reschedule only ever have one pending run to deal with. Runs are due on a fixed grid of periods
+ * from the first one; the OverrunPolicy decides what happens when a run finishes past the next slot.
+ */
+@Slf4j
+public class JobHandle {
+
+    @Getter
+    private final Runnable job;
+
+    private final JobTimer timer;
+    private final Consumer<JobHandle> onFinished;
+
+    // Guarded by this. Every schedule bumps the generation so runs from a replaced schedule stop themselves.
+    private long periodMillis;
+    private OverrunPolicy overrunPolicy;
+    private long nextFireTimeMillis = 0;
+    private long generation = 0;
+    private JobTimer.Timeout timeout = null;
+    private boolean paused = false;
+    private boolean cancelled = false;
+    private boolean done = false;
+
+    // Guarded by this.
+    private long runCount = 0;
+    private long lastDurationNanos = 0;
+    private long totalDurationNanos = 0;
+    private long overrunCount = 0;
+    private long skippedRunCount = 0;
+    private long lastQueueLagMillis = 0;
+    private long totalQueueLagMillis = 0;
+
+    public JobHandle(final Runnable job,
+                     final long period,
+                     final TimeUnit unit,
+                     final OverrunPolicy overrunPolicy,
+                     final JobTimer timer,
+                     final Consumer<JobHandle> onFinished) {
+        this.job = job;
+        this.periodMillis = unit.toMillis(period);
+        this.overrunPolicy = overrunPolicy;
+        this.timer = timer;
+        this.onFinished = onFinished;
+    }
+
+    public String getName() {
+        return job.getClass().getName();
+    }
+
+    public synchronized boolean isPeriodic() {
+        return periodMillis > 0;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // True once a one-shot job has run.
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized long getNextFireTimeMillis() {
+        return nextFireTimeMillis;
+    }
+
+    public synchronized OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    public synchronized void setOverrunPolicy(final OverrunPolicy overrunPolicy) {
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    public synchronized JobSnapshot snapshot() {
+        return new JobSnapshot(getName(), periodMillis, overrunPolicy, paused, nextFireTimeMillis,
+                               runCount,
+                               TimeUnit.NANOSECONDS.toMillis(lastDurationNanos),
+                               runCount == 0 ? 0 : totalDurationNanos / 1e6 / runCount,
+                               overrunCount,
+                               skippedRunCount,
+                               lastQueueLagMillis,
+                               runCount == 0 ? 0 : (double) totalQueueLagMillis / runCount);
+    }
+
+    public synchronized void start(final long delay, final TimeUnit unit) {
+        schedule(unit.toMillis(delay));
+    }
+
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        ++generation;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        onFinished.accept(this);
+    }
+
+    public synchronized void pause() {
+        if (cancelled || done || paused) {
+            return;
+        }
+        paused = true;
+        ++generation;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    // Periodic jobs run one period after resuming, one-shot jobs at their original time or right away if it passed.
+    public synchronized void resume() {
+        if (cancelled || done || !paused) {
+            return;
+        }
+        paused = false;
+        schedule(isPeriodic() ? periodMillis : Math.max(0, nextFireTimeMillis - System.currentTimeMillis()));
+    }
+
+    public synchronized void reschedule(final long initialDelay, final long period, final TimeUnit unit) {
+        if (cancelled) {
+            throw new IllegalStateException("Cannot reschedule cancelled job " + getName());
+        }
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        periodMillis = unit.toMillis(period);
+        paused = false;
+        done = false;
+        schedule(unit.toMillis(initialDelay));
+    }
+
+    private void schedule(final long delayMillis) {
+        scheduleAt(System.currentTimeMillis() + delayMillis);
+    }
+
+    private void scheduleAt(final long fireTimeMillis) {
+        final long scheduledGeneration = ++generation;
+        final long delayMillis = Math.max(0, fireTimeMillis - System.currentTimeMillis());
+        nextFireTimeMillis = fireTimeMillis;
+        timeout = timer.schedule(() -> execute(scheduledGeneration, fireTimeMillis), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void execute(final long scheduledGeneration, final long fireTimeMillis) {
+        synchronized (this) {
+            if (scheduledGeneration != generation) {
+                return;
+            }
+        }
+
+        final long startMillis = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        try {
+            job.run();
+        } catch (final Exception ex) {
+            log.warn(ex.getMessage(), ex);
+        }
+        final long durationNanos = System.nanoTime() - startNanos;
+
+        synchronized (this) {
+            ++runCount;
+            lastDurationNanos = durationNanos;
+            totalDurationNanos += durationNanos;
+            lastQueueLagMillis = Math.max(0, startMillis - fireTimeMillis);
+            totalQueueLagMillis += lastQueueLagMillis;
+
+            if (scheduledGeneration != generation) {
+                return;
+            }
+            if (isPeriodic()) {
+                scheduleNext(fireTimeMillis, System.currentTimeMillis());
+                return;
+            }
+            done = true;
+        }
+        onFinished.accept(this);
+    }
+
+    private void scheduleNext(final long fireTimeMillis, final long finishMillis) {
+        final long nextDueMillis = fireTimeMillis + periodMillis;
+        final boolean overrun = finishMillis > nextDueMillis;
+        if (overrun) {
+            ++overrunCount;
+        }
+
+        switch (overrunPolicy) {
+            case SKIP:
+                if (overrun) {
+                    final long missedRuns = (finishMillis - nextDueMillis) / periodMillis + 1;
+                    skippedRunCount += missedRuns;
+                    scheduleAt(nextDueMillis + missedRuns * periodMillis);
+                } else {
+                    scheduleAt(nextDueMillis);
+                }
+                break;
+            case COALESCE:
+                // Run now, but as the latest missed slot so the job keeps its phase afterwards.
+                if (overrun) {
+                    final long missedRuns = (finishMillis - nextDueMillis) / periodMillis;
+                    skippedRunCount += missedRuns;
+                    scheduleAt(nextDueMillis + missedRuns * periodMillis);
+                } else {
+                    scheduleAt(nextDueMillis);
+                }
+                break;
+            case WARN:
+                if (overrun) {
+                    log.warn("Job {} took {}ms, longer than its {}ms period.", getName(), TimeUnit.NANOSECONDS.toMillis(lastDurationNanos), periodMillis);
+                }
+                schedule(periodMillis);
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package stockstream.logic.scheduler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class JobSnapshot {
+
+    private final String name;
+    // 0 for one-shot jobs.
+    private final long periodMillis;
+    private final OverrunPolicy overrunPolicy;
+    private final boolean paused;
+    private final long nextFireTimeMillis;
+
+    private final long runCount;
+    private final long lastDurationMillis;
+    private final double averageDurationMillis;
+    private final long overrunCount;
+    private final long skippedRunCount;
+    // How late runs started compared to when they were due.
+    private final long lastQueueLagMillis;
+    private final double averageQueueLagMillis;
+
+}
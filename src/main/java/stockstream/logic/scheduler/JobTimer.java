@@ -0,0 +1,25 @@
+package stockstream.logic.scheduler;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a task once after a delay. JobHandles schedule each run through one of these.
+ */
+public interface JobTimer {
+
+    interface Timeout {
+        void cancel();
+    }
+
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit);
+
+    static JobTimer forExecutor(final ScheduledExecutorService executor) {
+        return (task, delay, unit) -> {
+            final ScheduledFuture<?> future = executor.schedule(task, delay, unit);
+            return () -> future.cancel(false);
+        };
+    }
+
+}
@@ -0,0 +1,52 @@
+package stockstream.logic.scheduler;
+
+import stockstream.data.MarketPhase;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * How often a job runs in each market phase. Phases without a period suspend the job, e.g.
+ * new MarketSchedule(() -> brokerCache.getMarketPhase(new DateTime())).withPeriod(REGULAR_HOURS, 5, SECONDS).withPeriod(AFTER_HOURS, 60, SECONDS)
+ * polls every 5 seconds while the market is open, every minute after hours and not at all otherwise.
+ */
+public class MarketSchedule {
+
+    private final Supplier<MarketPhase> marketPhaseSupplier;
+    private final Map<MarketPhase, Long> phaseToPeriodMillis = new EnumMap<>(MarketPhase.class);
+    private long maxStartJitterMillis = 0;
+
+    public MarketSchedule(final Supplier<MarketPhase> marketPhaseSupplier) {
+        this.marketPhaseSupplier = marketPhaseSupplier;
+    }
+
+    public MarketSchedule withPeriod(final MarketPhase marketPhase, final long period, final TimeUnit unit) {
+        phaseToPeriodMillis.put(marketPhase, unit.toMillis(period));
+        return this;
+    }
+
+    /**
+     * Delays the first run, and the first run after each suspension, by a random extra amount up to maxStartJitter.
+     * Every node sees a phase change at the same wall-clock time, so without it they would all resume in lockstep.
+     */
+    public MarketSchedule withStartJitter(final long maxStartJitter, final TimeUnit unit) {
+        this.maxStartJitterMillis = unit.toMillis(maxStartJitter);
+        return this;
+    }
+
+    public long getMaxStartJitterMillis() {
+        return maxStartJitterMillis;
+    }
+
+    public MarketPhase getCurrentPhase() {
+        return marketPhaseSupplier.get();
+    }
+
+    // 0 when the job is suspended in this phase.
+    public long getPeriodMillis(final MarketPhase marketPhase) {
+        return phaseToPeriodMillis.getOrDefault(marketPhase, 0L);
+    }
+
+}
@@ -0,0 +1,62 @@
+package stockstream.logic.scheduler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import stockstream.data.MarketPhase;
+import stockstream.util.RandomUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a periodic job's period in line with its MarketSchedule as the market phase changes.
+ */
+@Slf4j
+public class MarketScheduledJob {
+
+    @Getter
+    private final JobHandle jobHandle;
+    private final MarketSchedule marketSchedule;
+
+    // Guarded by this. Null until the phase has been read successfully.
+    private MarketPhase marketPhase = null;
+
+    public MarketScheduledJob(final JobHandle jobHandle, final MarketSchedule marketSchedule) {
+        this.jobHandle = jobHandle;
+        this.marketSchedule = marketSchedule;
+    }
+
+    /**
+     * Applies the current phase if it changed. A job coming out of suspension runs right away, or within the schedule's
+     * start jitter, a running job just switches to the new period. If the phase can't be read the job carries on as it
+     * was.
+     */
+    public synchronized void refresh() {
+        final MarketPhase currentPhase;
+        try {
+            currentPhase = marketSchedule.getCurrentPhase();
+        } catch (final Exception ex) {
+            log.warn(ex.getMessage(), ex);
+            if (marketPhase == null) {
+                jobHandle.pause();
+            }
+            return;
+        }
+
+        if (currentPhase == marketPhase || jobHandle.isCancelled()) {
+            return;
+        }
+
+        final long periodMillis = marketSchedule.getPeriodMillis(currentPhase);
+        if (periodMillis <= 0) {
+            jobHandle.pause();
+        } else if (marketPhase == null || jobHandle.isPaused()) {
+            jobHandle.reschedule(RandomUtil.nextLong(marketSchedule.getMaxStartJitterMillis()), periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            jobHandle.reschedule(periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Job {} entered {}, running every {}ms.", jobHandle.getName(), currentPhase, periodMillis);
+        marketPhase = currentPhase;
+    }
+
+}
@@ -0,0 +1,13 @@
+package stockstream.logic.scheduler;
+
+/**
+ * What a periodic job does when a run finishes after its next run was already due.
+ */
+public enum OverrunPolicy {
+    // Missed runs are dropped and the job carries on at its next slot still ahead.
+    SKIP,
+    // Missed runs collapse into one immediate run, then the job carries on at its usual slots.
+    COALESCE,
+    // The overrun is logged and the next run starts a full period after this one finished.
+    WARN
+}
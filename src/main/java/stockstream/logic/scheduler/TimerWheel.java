@@ -0,0 +1,196 @@
+package stockstream.logic.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Hierarchical timing wheel with O(1) schedule and cancel. Level 0 has one slot per tick, every higher level has one
+ * slot per full rotation of the level below it; timers move down a level when their slot comes round. Something has to
+ * call advance() about once per tick, expired tasks are handed to the executor.
+ */
+@Slf4j
+public class TimerWheel implements JobTimer {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final long startMillis;
+
+    // Guarded by this.
+    private final WheelTimeout[][] slots = new WheelTimeout[LEVELS][WHEEL_SIZE];
+    private long currentTick = 0;
+    private int pendingCount = 0;
+
+    public TimerWheel(final long tickMillis, final Executor executor) {
+        this(tickMillis, executor, System::currentTimeMillis);
+    }
+
+    public TimerWheel(final long tickMillis, final Executor executor, final LongSupplier clock) {
+        this.tickMillis = tickMillis;
+        this.executor = executor;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final long deadlineMillis = clock.getAsLong() + unit.toMillis(Math.max(0, delay));
+        final long deadlineTick = (deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+        final WheelTimeout timeout = new WheelTimeout(task, deadlineTick);
+
+        synchronized (this) {
+            if (deadlineTick > currentTick) {
+                insert(timeout);
+                ++pendingCount;
+                return timeout;
+            }
+        }
+
+        executor.execute(task);
+        return timeout;
+    }
+
+    // Moves the wheel up to the current time, catching up on any ticks missed while the caller was stalled.
+    public void advance() {
+        final long targetTick = (clock.getAsLong() - startMillis) / tickMillis;
+        final List<Runnable> expired = new ArrayList<>();
+
+        synchronized (this) {
+            while (currentTick < targetTick) {
+                ++currentTick;
+                cascade();
+                expire(expired);
+            }
+        }
+
+        for (final Runnable task : expired) {
+            try {
+                executor.execute(task);
+            } catch (final Exception ex) {
+                log.warn(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void cascade() {
+        for (int level = LEVELS - 1; level > 0; --level) {
+            if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                continue;
+            }
+            final int slot = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            WheelTimeout timeout = slots[level][slot];
+            slots[level][slot] = null;
+            while (timeout != null) {
+                final WheelTimeout next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void expire(final List<Runnable> expired) {
+        final int slot = (int) (currentTick & WHEEL_MASK);
+        WheelTimeout timeout = slots[0][slot];
+        slots[0][slot] = null;
+        while (timeout != null) {
+            final WheelTimeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            if (timeout.deadlineTick <= currentTick) {
+                timeout.level = -1;
+                --pendingCount;
+                expired.add(timeout.task);
+            } else {
+                insert(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    // A timer goes into the lowest level whose slot for it is still ahead of the current one.
+    private void insert(final WheelTimeout timeout) {
+        for (int level = 0; level < LEVELS; ++level) {
+            final int shift = WHEEL_BITS * level;
+            if ((timeout.deadlineTick >>> shift) - (currentTick >>> shift) < WHEEL_SIZE) {
+                link(timeout, level, (int) ((timeout.deadlineTick >>> shift) & WHEEL_MASK));
+                return;
+            }
+        }
+
+        // Beyond the top level: park it in the slot that comes round last and re-place it from there.
+        final int shift = WHEEL_BITS * (LEVELS - 1);
+        link(timeout, LEVELS - 1, (int) (((currentTick >>> shift) - 1) & WHEEL_MASK));
+    }
+
+    private void link(final WheelTimeout timeout, final int level, final int slot) {
+        final WheelTimeout head = slots[level][slot];
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private synchronized void unlink(final WheelTimeout timeout) {
+        if (timeout.level < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+        --pendingCount;
+    }
+
+    private class WheelTimeout implements Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+
+        // Guarded by the wheel. A level of -1 means the timer already fired or was cancelled.
+        private int level = -1;
+        private int slot;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        private WheelTimeout(final Runnable task, final long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public void cancel() {
+            unlink(this);
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import stockstream.logic.PubSub;
 import stockstream.logic.Scheduler;
+import stockstream.logic.elections.ElectionEngine;
 
 @Configuration
 public class LogicBeans {
@@ -18,4 +19,9 @@ public class LogicBeans {
         return new Scheduler();
     }
 
+    @Bean
+    public ElectionEngine electionEngine() {
+        return new ElectionEngine();
+    }
+
 }
@@ -14,6 +14,10 @@ public class RandomUtil {
         return bound == 0 ? bound : random.nextInt(bound);
     }
 
+    public static long nextLong(final long bound) {
+        return bound <= 0 ? 0 : (long) (random.nextDouble() * bound);
+    }
+
     public static float nextFloat() {
         return random.nextFloat();
     }
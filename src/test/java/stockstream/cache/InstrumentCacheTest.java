@@ -0,0 +1,182 @@
+package stockstream.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import stockstream.database.InstrumentRegistry;
+import stockstream.database.InstrumentStub;
+import stockstream.logic.Scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private InstrumentRegistry instrumentRegistry;
+
+    @Mock
+    private Scheduler scheduler;
+
+    @InjectMocks
+    private InstrumentCache instrumentCache;
+
+    // A second process started after instrumentCache wrote its snapshot.
+    @InjectMocks
+    private InstrumentCache restartedCache;
+
+    private InstrumentSnapshotFile instrumentSnapshotFile;
+
+    private Runnable loadRemoteInstruments;
+
+    @Before
+    public void setupTest() {
+        MockitoAnnotations.initMocks(this);
+
+        instrumentSnapshotFile = new InstrumentSnapshotFile(new File(temporaryFolder.getRoot(), "instruments.bin"));
+        loadRemoteInstruments = initCache(instrumentCache);
+    }
+
+    private Runnable initCache(final InstrumentCache cache) {
+        cache.setInstrumentSnapshotFile(instrumentSnapshotFile);
+        cache.init();
+
+        final ArgumentCaptor<Runnable> jobCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).scheduleJob(jobCaptor.capture(), any(DateTime.class));
+        return jobCaptor.getValue();
+    }
+
+    @Test
+    public void testLoadRemoteInstruments_secondLoad_expectDeltaFromWatermarkMerged() {
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L),
+                new InstrumentStub("http://msft", "MSFT", "Microsoft", 0f, true, 0f)));
+        loadRemoteInstruments.run();
+
+        assertEquals(ImmutableSet.of("AMZN", "MSFT"), instrumentCache.getValidSymbols());
+        assertEquals(1_000_000L, instrumentCache.getUpdatedAtWatermark());
+
+        when(instrumentRegistry.getInstrumentStubsUpdatedSince(anyLong())).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, false, 0f, 2_000_000L),
+                new InstrumentStub("http://amd", "AMD", "AMD", 0f, true, 0f, 2_000_000L)));
+        loadRemoteInstruments.run();
+
+        verify(instrumentRegistry, times(1)).getAllInstrumentStubs();
+        verify(instrumentRegistry).getInstrumentStubsUpdatedSince(1_000_000L - 300_000L);
+        assertEquals(ImmutableSet.of("AMD", "MSFT"), instrumentCache.getValidSymbols());
+        assertEquals(2_000_000L, instrumentCache.getUpdatedAtWatermark());
+    }
+
+    @Test
+    public void testResyncInstruments_rowDeletedSinceFullLoad_expectDroppedFromCache() throws IOException {
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L),
+                new InstrumentStub("http://msft", "MSFT", "Microsoft", 0f, true, 0f, 2_000_000L)));
+        loadRemoteInstruments.run();
+
+        final ArgumentCaptor<Runnable> jobCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleJob(jobCaptor.capture(), eq(24L), eq(24L), eq(TimeUnit.HOURS), anyLong());
+
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L)));
+        jobCaptor.getValue().run();
+
+        verify(instrumentRegistry, times(2)).getAllInstrumentStubs();
+        assertEquals(ImmutableSet.of("AMZN"), instrumentCache.getValidSymbols());
+        assertEquals(1_000_000L, instrumentCache.getUpdatedAtWatermark());
+        assertEquals(1, instrumentSnapshotFile.read().get().getInstruments().size());
+
+        when(instrumentRegistry.getInstrumentStubsUpdatedSince(anyLong())).thenReturn(ImmutableList.of());
+        loadRemoteInstruments.run();
+
+        verify(instrumentRegistry).getInstrumentStubsUpdatedSince(1_000_000L - 300_000L);
+    }
+
+    @Test
+    public void testLoadRemoteInstruments_emptyFullLoad_expectFullLoadRetried() {
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of());
+        loadRemoteInstruments.run();
+        loadRemoteInstruments.run();
+
+        verify(instrumentRegistry, times(2)).getAllInstrumentStubs();
+        verify(instrumentRegistry, never()).getInstrumentStubsUpdatedSince(anyLong());
+        assertFalse(instrumentSnapshotFile.getFile().exists());
+    }
+
+    @Test
+    public void testInit_snapshotFromEarlierLoad_expectSymbolsValidBeforeFullDatabaseLoad() throws IOException {
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L),
+                new InstrumentStub("http://msft", "MSFT", null, 0f, true, 0f)));
+        loadRemoteInstruments.run();
+
+        final InstrumentSnapshotFile.Snapshot snapshot = instrumentSnapshotFile.read().get();
+        assertEquals(2, snapshot.getInstruments().size());
+        assertEquals(1_000_000L, snapshot.getUpdatedAtWatermark());
+
+        final Runnable restartedLoad = initCache(restartedCache);
+
+        assertEquals(ImmutableSet.of("AMZN", "MSFT"), restartedCache.getValidSymbols());
+        assertTrue(restartedCache.getSymbolDictionary().contains("MSFT"));
+
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L)));
+        restartedLoad.run();
+
+        verify(instrumentRegistry, times(2)).getAllInstrumentStubs();
+        verify(instrumentRegistry, never()).getInstrumentStubsUpdatedSince(anyLong());
+        assertEquals(ImmutableSet.of("AMZN"), restartedCache.getValidSymbols());
+    }
+
+    @Test
+    public void testInit_snapshotThenEmptyFullLoad_expectNextLoadFull() throws IOException {
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f, 1_000_000L)));
+        loadRemoteInstruments.run();
+
+        final Runnable restartedLoad = initCache(restartedCache);
+
+        when(instrumentRegistry.getAllInstrumentStubs()).thenReturn(ImmutableList.of());
+        restartedLoad.run();
+        restartedLoad.run();
+
+        verify(instrumentRegistry, times(3)).getAllInstrumentStubs();
+        verify(instrumentRegistry, never()).getInstrumentStubsUpdatedSince(anyLong());
+        assertEquals(ImmutableSet.of("AMZN"), restartedCache.getValidSymbols());
+        assertEquals(1, instrumentSnapshotFile.read().get().getInstruments().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRead_notASnapshot_expectIOException() throws IOException {
+        Files.write(instrumentSnapshotFile.getFile().toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+
+        instrumentSnapshotFile.read();
+    }
+
+}
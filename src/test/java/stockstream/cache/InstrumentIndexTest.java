@@ -0,0 +1,31 @@
+package stockstream.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import stockstream.database.InstrumentStub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentIndexTest {
+
+    @Test
+    public void testBuild_mixedInstruments_expectOnlyTradeableSafeUnrestrictedSymbols() {
+        final InstrumentIndex instrumentIndex = InstrumentIndex.build(ImmutableList.of(
+                new InstrumentStub("http://amzn", "AMZN", "Amazon", 0.1f, true, 0.01f),
+                new InstrumentStub("http://risky", "RISK", "Risky", 0.5f, true, 0.01f),
+                new InstrumentStub("http://halted", "HALT", "Halted", 0.1f, false, 0.01f),
+                new InstrumentStub("http://restricted", "NOPE", "Restricted", 0.1f, true, 0.01f)), ImmutableSet.of("NOPE"));
+
+        assertEquals(ImmutableSet.of("AMZN"), instrumentIndex.getValidSymbols());
+        assertEquals("AMZN", instrumentIndex.getUrlToInstrument().get("http://amzn").getSymbol());
+        assertEquals("http://amzn", instrumentIndex.getSymbolToInstrument().get("AMZN").getUrl());
+    }
+
+    @Test
+    public void testBuild_noInstruments_expectEmptyIndex() {
+        assertTrue(InstrumentIndex.build(ImmutableList.of(), ImmutableSet.of()).isEmpty());
+    }
+
+}
@@ -0,0 +1,45 @@
+package stockstream.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import stockstream.database.InstrumentStub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SymbolDictionaryTest {
+
+    private final SymbolDictionary symbolDictionary = SymbolDictionary.of(ImmutableList.of(
+            new InstrumentStub("http://msft", "MSFT", "Microsoft", 0f, true, 0f),
+            new InstrumentStub("http://amzn", "AMZN", "Amazon", 0f, true, 0f),
+            new InstrumentStub("http://amd", "AMD", "AMD", 0f, true, 0f)));
+
+    @Test
+    public void testGetId_sortedSymbols_expectDenseIdsInSymbolOrder() {
+        assertEquals(3, symbolDictionary.size());
+        assertEquals(0, symbolDictionary.getId("AMD"));
+        assertEquals(1, symbolDictionary.getId("AMZN"));
+        assertEquals(2, symbolDictionary.getId("MSFT"));
+        assertEquals("AMZN", symbolDictionary.getSymbol(1));
+    }
+
+    @Test
+    public void testContains_symbolInsideLargerText_expectMatchOnlyExactRange() {
+        final String message = "!buy $AMZN now";
+
+        assertTrue(symbolDictionary.contains(message, 6, 10));
+        assertFalse(symbolDictionary.contains(message, 6, 9));
+        assertFalse(symbolDictionary.contains(message, 5, 10));
+        assertFalse(symbolDictionary.contains("AM"));
+        assertFalse(symbolDictionary.contains("amzn"));
+    }
+
+    @Test
+    public void testGetIdForUrl_knownAndUnknownUrls_expectSymbolIdOrNotFound() {
+        assertEquals(symbolDictionary.getId("MSFT"), symbolDictionary.getIdForUrl("http://msft"));
+        assertEquals(SymbolDictionary.NOT_FOUND, symbolDictionary.getIdForUrl("http://goog"));
+        assertFalse(SymbolDictionary.EMPTY.contains("AMZN"));
+    }
+
+}
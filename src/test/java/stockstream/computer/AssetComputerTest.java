@@ -14,6 +14,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import stockstream.TestDataUtils;
 import stockstream.cache.InstrumentCache;
+import stockstream.cache.SymbolDictionary;
 import stockstream.database.*;
 
 import java.util.Collection;
@@ -51,7 +52,7 @@ public class AssetComputerTest {
 
     @Test
     public void testIsSymbol_validSymbolDollarSign_expectTrue() {
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("ABC"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "ABC", "", 0f, true, 0f))));
 
         boolean isSymbolD = assetComputer.isSymbol("$ABC");
         boolean isSymbol = assetComputer.isSymbol("ABC");
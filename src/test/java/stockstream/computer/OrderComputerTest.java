@@ -15,6 +15,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import stockstream.cache.BrokerCache;
 import stockstream.cache.InstrumentCache;
+import stockstream.cache.SymbolDictionary;
 import stockstream.data.*;
 import stockstream.database.*;
 
@@ -73,7 +74,7 @@ public class OrderComputerTest {
         when(brokerCache.getAssets()).thenReturn(ImmutableList.of(new Asset("AMZN", 1, 900d, new Quote())));
         when(walletOrderRegistry.findUnmatchedFilledBuyOrdersForSymbol(any())).thenReturn(Collections.emptyList());
         when(robinhoodOrderRegistry.retrievePendingRobinhoodOrders(any())).thenReturn(Collections.emptyList());
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
         when(brokerCache.getAccountBalance()).thenReturn(new MarginBalances(100, 0, 123, 4321.0));
         when(walletComputer.computeBuyingPower(anySet())).thenReturn(500d);
 
@@ -89,7 +90,7 @@ public class OrderComputerTest {
         when(brokerCache.getAssets()).thenReturn(ImmutableList.of(new Asset("AMZN", 1, 900d, new Quote())));
         when(walletOrderRegistry.findUnmatchedFilledBuyOrdersForSymbol(any())).thenReturn(Collections.emptyList());
         when(robinhoodOrderRegistry.retrievePendingRobinhoodOrders(any())).thenReturn(Collections.emptyList());
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
         when(brokerCache.getAccountBalance()).thenReturn(new MarginBalances(100, 0, 123, 4321.0));
         when(walletComputer.computeBuyingPower(anySet())).thenReturn(50d);
 
@@ -106,7 +107,7 @@ public class OrderComputerTest {
 
         when(walletOrderRegistry.findUnmatchedFilledBuyOrdersForSymbol(any())).thenReturn(Collections.emptyList());
         when(robinhoodOrderRegistry.retrievePendingRobinhoodOrders(any())).thenReturn(ImmutableList.of(pendingOrder));
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
 
         final OrderStatus status = orderComputer.preProcessTradeCommand(new TradeCommand(TradeAction.SELL, "AMZN"),
                                                                         ImmutableSet.of(new Voter("michrob", "twitch", "#stockstream", false)));
@@ -120,7 +121,7 @@ public class OrderComputerTest {
 
         when(walletOrderRegistry.findUnmatchedFilledBuyOrdersForSymbol(any())).thenReturn(ImmutableList.of(playerOwned));
         when(robinhoodOrderRegistry.retrievePendingRobinhoodOrders(any())).thenReturn(ImmutableList.of(pendingOrder));
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
 
         final OrderStatus status = orderComputer.preProcessTradeCommand(new TradeCommand(TradeAction.SELL, "AMZN"),
                                                                         ImmutableSet.of(new Voter("michrob", "twitch", "#stockstream", false)));
@@ -139,7 +140,7 @@ public class OrderComputerTest {
         when(brokerCache.getAssets()).thenReturn(ImmutableList.of(new Asset("AMZN", 2, 900d, new Quote())));
         when(walletOrderRegistry.findUnmatchedFilledBuyOrdersForSymbol(any())).thenReturn(ImmutableList.of());
         when(robinhoodOrderRegistry.retrievePendingRobinhoodOrders(any())).thenReturn(ImmutableList.of(pendingOrder1, pendingOrder2));
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
         when(brokerCache.getAccountBalance()).thenReturn(new MarginBalances(100, 0, 123, 4321.0));
         when(walletComputer.computeBuyingPower(anySet())).thenReturn(500d);
 
@@ -157,7 +158,7 @@ public class OrderComputerTest {
         when(quoteComputer.computeMostRecentPrice(any())).thenReturn(900.0);
         when(brokerCache.getAccountBalance()).thenReturn(new MarginBalances(100, 0, 123, 4321.0));
         when(brokerCache.getQuoteForSymbol(any())).thenReturn(quote);
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
 
         final OrderStatus status = orderComputer.preProcessTradeCommand(new TradeCommand(TradeAction.BUY, "AMZN"),
                                                                         ImmutableSet.of(new Voter("michrob", "twitch", "#stockstream", false)));
@@ -173,7 +174,7 @@ public class OrderComputerTest {
         when(brokerCache.getAccountBalance()).thenReturn(new MarginBalances(5000f, 0, 123, 4321.0));
         when(brokerCache.getQuoteForSymbol(any())).thenReturn(quote);
         when(quoteComputer.computeMostRecentPrice(any())).thenReturn(2.49d);
-        when(instrumentCache.getValidSymbols()).thenReturn(ImmutableSet.of("AMZN"));
+        when(instrumentCache.getSymbolDictionary()).thenReturn(SymbolDictionary.of(ImmutableList.of(new InstrumentStub("", "AMZN", "", 0f, true, 0f))));
 
         final OrderStatus status = orderComputer.preProcessTradeCommand(new TradeCommand(TradeAction.BUY, "AMZN"),
                                                                         ImmutableSet.of(new Voter("michrob", "twitch", "#stockstream", false)));
@@ -0,0 +1,45 @@
+package stockstream.database;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import stockstream.TestDataUtils;
+import stockstream.logic.TestCandidate;
+import stockstream.logic.elections.Election;
+import stockstream.logic.elections.ElectionSnapshot;
+import stockstream.util.JSONUtil;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ElectionStubTest {
+
+    @Test
+    public void testElectionStub_electionWithVotesAndOutcomes_expectPollsAndCandidatesFromOneTallyLoad() {
+        final ElectionRegistry electionRegistry = Mockito.mock(ElectionRegistry.class);
+        final Election<TestCandidate> election = new Election<>("test", TestCandidate.class, 3)
+                .withExpirationDate(1000)
+                .withMessageParser(s -> Optional.of(new TestCandidate(s)))
+                .withOutcome(new TestCandidate("!skip"), () -> { });
+        election.setElectionRegistry(electionRegistry);
+
+        election.receiveVote("!buy", TestDataUtils.createVoter("p1"));
+        election.receiveVote("!buy", TestDataUtils.createVoter("p2"));
+        election.receiveVote("!sell", TestDataUtils.createVoter("p3"));
+
+        final ElectionSnapshot<TestCandidate> snapshot = election.snapshot();
+        final ElectionStub electionStub = new ElectionStub(snapshot);
+
+        final String buyJson = JSONUtil.serializeObject(new TestCandidate("!buy")).get();
+        assertEquals(2, electionStub.getPolls().get(buyJson).intValue());
+        assertEquals(2, electionStub.getPolls().size());
+        assertEquals(3, electionStub.getCandidates().size());
+        assertTrue(electionStub.getCandidates().contains(JSONUtil.serializeObject(new TestCandidate("!skip")).get()));
+        assertEquals("test:1000", electionStub.getElectionId());
+        verify(electionRegistry, times(1)).getElectionVotes("test:1000");
+    }
+
+}
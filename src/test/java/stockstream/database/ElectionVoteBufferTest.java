@@ -0,0 +1,124 @@
+package stockstream.database;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import stockstream.TestDataUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ElectionVoteBufferTest {
+
+    @Mock
+    private ElectionRegistry electionRegistry;
+
+    @InjectMocks
+    private ElectionVoteBuffer electionVoteBuffer;
+
+    @Before
+    public void setupTest() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testFlush_playerVotedTwice_expectOnlyLatestVoteSaved() {
+        electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p1"), "\"!buy\"", "test:1"));
+        electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p2"), "\"!buy\"", "test:1"));
+        electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p1"), "\"!sell\"", "test:1"));
+        electionVoteBuffer.flush();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<ElectionVoteStub>> savedVotes = ArgumentCaptor.forClass((Class) Collection.class);
+        verify(electionRegistry).saveElectionVotes(savedVotes.capture());
+
+        final List<ElectionVoteStub> votes = new ArrayList<>(savedVotes.getValue());
+        assertEquals(2, votes.size());
+        assertEquals("\"!sell\"", votes.get(0).getVoteObject());
+        assertEquals(0, electionVoteBuffer.getPendingCount());
+    }
+
+    @Test
+    public void testFlush_saveFails_expectVotesKeptForNextFlush() {
+        doThrow(new IllegalStateException("database down")).when(electionRegistry).saveElectionVotes(anyCollection());
+
+        electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p1"), "\"!buy\"", "test:1"));
+        try {
+            electionVoteBuffer.flush();
+            fail();
+        } catch (final IllegalStateException ex) {
+            assertEquals("database down", ex.getMessage());
+        }
+
+        assertEquals(1, electionVoteBuffer.getPendingCount());
+    }
+
+    @Test
+    public void testFlush_nothingBuffered_expectNoSave() {
+        electionVoteBuffer.flush();
+
+        verify(electionRegistry, never()).saveElectionVotes(anyCollection());
+    }
+
+    @Test
+    public void testFlush_oneVoteAlwaysFails_expectOtherVotesSavedAndBadVoteDroppedAfterMaxAttempts() {
+        final ElectionVoteStub badVote = new ElectionVoteStub(TestDataUtils.createVoter("p1"), "\"!buy\"", "test:1");
+        doAnswer(invocation -> {
+            final Collection<?> votes = (Collection<?>) invocation.getArguments()[0];
+            if (votes.contains(badVote)) {
+                throw new IllegalStateException("bad row");
+            }
+            return null;
+        }).when(electionRegistry).saveElectionVotes(anyCollection());
+
+        electionVoteBuffer.addVote(badVote);
+        electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p2"), "\"!buy\"", "test:1"));
+        electionVoteBuffer.flush();
+
+        assertEquals(1, electionVoteBuffer.getPendingCount());
+
+        for (int i = 1; i < 3; ++i) {
+            try {
+                electionVoteBuffer.flush();
+                fail();
+            } catch (final IllegalStateException ex) {
+                assertEquals("bad row", ex.getMessage());
+            }
+        }
+
+        assertEquals(0, electionVoteBuffer.getPendingCount());
+        electionVoteBuffer.flush();
+    }
+
+    @Test
+    public void testFlush_databaseDown_expectNoVoteDroppedAndAddVoteNeverThrows() {
+        doThrow(new IllegalStateException("database down")).when(electionRegistry).saveElectionVotes(anyCollection());
+
+        for (int i = 0; i < 2000; ++i) {
+            electionVoteBuffer.addVote(new ElectionVoteStub(TestDataUtils.createVoter("p" + i), "\"!buy\"", "test:1"));
+        }
+        for (int i = 0; i < 5; ++i) {
+            try {
+                electionVoteBuffer.flush();
+                fail();
+            } catch (final IllegalStateException ex) {
+                assertEquals("database down", ex.getMessage());
+            }
+        }
+
+        assertEquals(2000, electionVoteBuffer.getPendingCount());
+    }
+
+}
@@ -0,0 +1,96 @@
+package stockstream.database;
+
+import org.junit.Test;
+import stockstream.TestDataUtils;
+import stockstream.data.Voter;
+import stockstream.logic.TestCandidate;
+import stockstream.util.JSONUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ElectionVoteCodecTest {
+
+    @Test
+    public void testDecodeVoter_encodedVoterWithSeparators_expectSameVoter() {
+        final Voter voter = new Voter("we|ird\\name", "twitch", "#stock|stream", true);
+
+        final String encodedVoter = ElectionVoteCodec.encodeVoterKey(voter);
+        final Voter decodedVoter = ElectionVoteCodec.decodeVoter(encodedVoter).get();
+
+        assertEquals("we|ird\\name", decodedVoter.getUsername());
+        assertEquals("twitch", decodedVoter.getPlatform());
+        assertEquals("#stock|stream", decodedVoter.getChannel());
+        assertTrue(decodedVoter.isSubscriber());
+    }
+
+    @Test
+    public void testEncodeVoter_compactVotersNotEnabled_expectJsonOlderNodesCanRead() {
+        final String encodedVoter = ElectionVoteCodec.encodeVoter(TestDataUtils.createVoter("p1"));
+
+        assertFalse(ElectionVoteCodec.isCompactVotersEnabled());
+        assertEquals(TestDataUtils.createVoter("p1"), JSONUtil.deserializeObject(encodedVoter, Voter.class).get());
+    }
+
+    @Test
+    public void testDecodeVoter_legacyJsonVoter_expectVoterRead() {
+        final String legacyVoter = JSONUtil.serializeObject(TestDataUtils.createVoter("p1"), true).get();
+
+        final Optional<Voter> voter = ElectionVoteCodec.decodeVoter(legacyVoter);
+
+        assertEquals(TestDataUtils.createVoter("p1"), voter.get());
+    }
+
+    @Test
+    public void testDecodeCandidate_sameEncodingTwiceSameMap_expectSharedInstance() {
+        final String encodedCandidate = ElectionVoteCodec.encodeCandidate(new TestCandidate("!buy AMZN"));
+        final Map<String, Optional<TestCandidate>> decodedCandidates = new HashMap<>();
+
+        final TestCandidate first = ElectionVoteCodec.decodeCandidate(encodedCandidate, TestCandidate.class, decodedCandidates).get();
+        final TestCandidate second = ElectionVoteCodec.decodeCandidate(encodedCandidate, TestCandidate.class, decodedCandidates).get();
+
+        assertFalse(encodedCandidate.contains("\n"));
+        assertEquals(new TestCandidate("!buy AMZN"), first);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testDecodeCandidate_sameEncodingSeparateDecodes_expectSeparateInstances() {
+        final String encodedCandidate = ElectionVoteCodec.encodeCandidate(new TestCandidate("!buy AMZN"));
+
+        final TestCandidate first = ElectionVoteCodec.decodeCandidate(encodedCandidate, TestCandidate.class, new HashMap<>()).get();
+        final TestCandidate second = ElectionVoteCodec.decodeCandidate(encodedCandidate, TestCandidate.class).get();
+
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testReencode_legacyRow_expectCompactRowWithSameContents() {
+        final ElectionVoteStub legacyStub = new ElectionVoteStub("test:1:twitch:p1", "twitch:p1", "test:1",
+                                                                 JSONUtil.serializeObject(new TestCandidate("!sell"), true).get(),
+                                                                 JSONUtil.serializeObject(TestDataUtils.createVoter("p1"), true).get());
+
+        assertTrue(ElectionVoteCodec.isLegacy(legacyStub));
+        assertTrue(ElectionVoteCodec.reencode(legacyStub));
+        assertFalse(ElectionVoteCodec.isLegacy(legacyStub));
+
+        assertEquals(ElectionVoteCodec.encodeVoterKey(TestDataUtils.createVoter("p1")), legacyStub.getVoterObject());
+        // The legacy row's derived properties are kept, the codec can't tell them apart without the candidate class.
+        assertFalse(legacyStub.getVoteObject().contains("\n"));
+        assertEquals(new TestCandidate("!sell"), ElectionVoteCodec.decodeCandidate(legacyStub.getVoteObject(), TestCandidate.class).get());
+    }
+
+    @Test
+    public void testEncodeCandidate_derivedGetters_expectOnlySettableProperties() {
+        assertEquals("{\"candidate\":\"!sell\"}", ElectionVoteCodec.encodeCandidate(new TestCandidate("!sell")));
+    }
+
+}
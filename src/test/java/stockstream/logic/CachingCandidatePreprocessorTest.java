@@ -0,0 +1,103 @@
+package stockstream.logic;
+
+import org.junit.Test;
+import stockstream.TestDataUtils;
+import stockstream.data.OrderResult;
+import stockstream.logic.elections.CachingCandidatePreprocessor;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingCandidatePreprocessorTest {
+
+    private final AtomicInteger validations = new AtomicInteger(0);
+
+    private CachingCandidatePreprocessor<TestCandidate> createPreprocessor(final long ttlMillis, final boolean perVoter) {
+        return new CachingCandidatePreprocessor<>((candidate, voter) -> {
+            validations.incrementAndGet();
+            return candidate.getLabel().startsWith("!buy BAD") ? Optional.of("Bad ticker") : Optional.empty();
+        }, ttlMillis, TimeUnit.MILLISECONDS, perVoter);
+    }
+
+    @Test
+    public void testPreProcessCandidate_rejectedCandidateRepeated_expectValidatedOnce() {
+        final CachingCandidatePreprocessor<TestCandidate> preprocessor = createPreprocessor(60000, false);
+
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(Optional.of("Bad ticker"), preprocessor.preProcessCandidate(new TestCandidate("!buy BADTICKER"), TestDataUtils.createVoter("p" + i)));
+        }
+
+        assertEquals(1, validations.get());
+    }
+
+    @Test
+    public void testPreProcessCandidate_perVoter_expectValidatedOncePerVoter() {
+        final CachingCandidatePreprocessor<TestCandidate> preprocessor = createPreprocessor(60000, true);
+
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p2"));
+
+        assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void testPreProcessCandidate_ttlExpired_expectValidatedAgain() throws InterruptedException {
+        final CachingCandidatePreprocessor<TestCandidate> preprocessor = createPreprocessor(20, false);
+
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+        Thread.sleep(50);
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+
+        assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void testInvalidateOn_orderResultPublished_expectValidatedAgain() {
+        final PubSub pubSub = new PubSub();
+        final CachingCandidatePreprocessor<TestCandidate> preprocessor = createPreprocessor(60000, false).invalidateOn(pubSub, OrderResult.class);
+
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+        pubSub.publishClassType(OrderResult.class, new OrderResult());
+        preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1"));
+
+        assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void testInvalidateAll_duringLoad_expectStaleAnswerNotServed() throws Exception {
+        final AtomicReference<Optional<String>> verdict = new AtomicReference<>(Optional.empty());
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final CachingCandidatePreprocessor<TestCandidate> preprocessor = new CachingCandidatePreprocessor<>((candidate, voter) -> {
+            final Optional<String> result = verdict.get();
+            if (validations.incrementAndGet() == 1) {
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return result;
+        }, 60000, TimeUnit.MILLISECONDS, false);
+
+        final Thread loader = new Thread(() -> preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p1")));
+        loader.start();
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        verdict.set(Optional.of("Can't afford"));
+        preprocessor.invalidateAll();
+        releaseLoad.countDown();
+        loader.join(5000);
+
+        assertEquals(Optional.of("Can't afford"), preprocessor.preProcessCandidate(new TestCandidate("!buy AMZN"), TestDataUtils.createVoter("p2")));
+    }
+
+}
@@ -0,0 +1,149 @@
+package stockstream.logic;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import stockstream.TestDataUtils;
+import stockstream.database.ElectionRegistry;
+import stockstream.logic.elections.Election;
+import stockstream.logic.elections.ElectionEngine;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ElectionEngineTest {
+
+    @Mock
+    private ElectionRegistry electionRegistry;
+
+    private ElectionEngine electionEngine;
+
+    @Before
+    public void setupTest() {
+        MockitoAnnotations.initMocks(this);
+        electionEngine = new ElectionEngine(4);
+        electionEngine.setElectionRegistry(electionRegistry);
+    }
+
+    @After
+    public void teardownTest() {
+        electionEngine.shutdown();
+    }
+
+    @Test
+    public void testReceiveVote_votesForManyElections_expectEachRoutedToItsElection() throws Exception {
+        for (int i = 0; i < 50; ++i) {
+            final Election<TestCandidate> election = createElection("channel" + i, 1000);
+            electionEngine.registerElection(election);
+            electionEngine.receiveVote(election.getElectionId(), "!vote" + i, TestDataUtils.createVoter("p1")).get(1, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < 50; ++i) {
+            final Election<?> election = electionEngine.getElection("channel" + i + ":1000").get();
+            assertEquals(1, election.getCandidateToVoteCount().get(new TestCandidate("!vote" + i)).intValue());
+        }
+    }
+
+    @Test
+    public void testReceiveVote_chatLineInChannel_expectRoutedToThatChannelsElectionsOnly() throws Exception {
+        final Election<TestCandidate> trades = createElection("trades", 1000);
+        final Election<TestCandidate> wallets = createElection("wallets", 1000);
+        final Election<TestCandidate> otherChannel = createElection("other", 1000);
+        electionEngine.registerElection(trades, "#stockstream");
+        electionEngine.registerElection(wallets, "#stockstream");
+        electionEngine.registerElection(otherChannel, "#other");
+
+        electionEngine.receiveVote("!buy", TestDataUtils.createVoter("p1")).get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, trades.getCandidateToVoteCount().get(new TestCandidate("!buy")).intValue());
+        assertEquals(1, wallets.getCandidateToVoteCount().get(new TestCandidate("!buy")).intValue());
+        assertTrue(otherChannel.getCandidateToVoteCount().isEmpty());
+
+        electionEngine.unregisterElection(trades.getElectionId());
+        electionEngine.receiveVote("!sell", TestDataUtils.createVoter("p2")).get(1, TimeUnit.SECONDS);
+
+        assertFalse(trades.getCandidateToVoteCount().containsKey(new TestCandidate("!sell")));
+        assertEquals(1, wallets.getCandidateToVoteCount().get(new TestCandidate("!sell")).intValue());
+    }
+
+    @Test
+    public void testReceiveVote_unknownElection_expectEmptyReply() throws Exception {
+        final Optional<String> reply = electionEngine.receiveVote("missing:1", "!vote", TestDataUtils.createVoter("p1")).get(1, TimeUnit.SECONDS);
+
+        assertFalse(reply.isPresent());
+    }
+
+    @Test
+    public void testExpireElections_oneExpired_expectDecidedArchivedAndRemoved() throws Exception {
+        final MutableBoolean outcomeExecuted = new MutableBoolean(false);
+        final Election<TestCandidate> expiring = createElection("expiring", 1000);
+        expiring.addOutcome(new TestCandidate("!buy"), () -> outcomeExecuted.setValue(true));
+        electionEngine.registerElection(expiring);
+        electionEngine.registerElection(createElection("running", 5000));
+
+        electionEngine.receiveVote(expiring.getElectionId(), "!buy", TestDataUtils.createVoter("p1")).get(1, TimeUnit.SECONDS);
+        final List<Election<?>> expired = electionEngine.expireElections(2000).get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, expired.size());
+        assertTrue(outcomeExecuted.booleanValue());
+        assertEquals(1, electionEngine.getElectionCount());
+        verify(electionRegistry, times(1)).archiveElections(anyCollection());
+    }
+
+    @Test
+    public void testExpireElections_archiveFails_expectArchiveRetriedWithNextExpiry() throws Exception {
+        doThrow(new IllegalStateException("database down")).doNothing().when(electionRegistry).archiveElections(anyCollection());
+        electionEngine.registerElection(createElection("expiring", 1000));
+
+        assertEquals(1, electionEngine.expireElections(2000).get(1, TimeUnit.SECONDS).size());
+        assertEquals(1, electionEngine.getUnarchivedCount());
+        assertEquals(0, electionEngine.getElectionCount());
+
+        assertEquals(0, electionEngine.expireElections(3000).get(1, TimeUnit.SECONDS).size());
+        assertEquals(0, electionEngine.getUnarchivedCount());
+        verify(electionRegistry, times(2)).archiveElections(anyCollection());
+    }
+
+    @Test
+    public void testExpireElections_archiveSlow_expectVotesStillHandled() throws Exception {
+        final CountDownLatch releaseArchive = new CountDownLatch(1);
+        doAnswer(invocation -> releaseArchive.await(5, TimeUnit.SECONDS)).when(electionRegistry).archiveElections(anyCollection());
+
+        electionEngine.registerElection(createElection("expiring", 1000));
+        final CompletableFuture<List<Election<?>>> expiry = electionEngine.expireElections(2000);
+
+        for (int i = 0; i < 20; ++i) {
+            final Election<TestCandidate> election = createElection("running" + i, 5000);
+            electionEngine.registerElection(election);
+            electionEngine.receiveVote(election.getElectionId(), "!buy", TestDataUtils.createVoter("p1")).get(1, TimeUnit.SECONDS);
+        }
+
+        assertFalse(expiry.isDone());
+        releaseArchive.countDown();
+        assertEquals(1, expiry.get(5, TimeUnit.SECONDS).size());
+    }
+
+    private Election<TestCandidate> createElection(final String topic, final long expirationDate) {
+        final Election<TestCandidate> election = new Election<>(topic, TestCandidate.class, 1);
+        election.withExpirationDate(expirationDate)
+                .withMessageParser(s -> Optional.of(new TestCandidate(s)))
+                .setElectionRegistry(electionRegistry);
+        return election;
+    }
+
+}
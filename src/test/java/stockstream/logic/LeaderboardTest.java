@@ -0,0 +1,160 @@
+package stockstream.logic;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import stockstream.logic.elections.Leaderboard;
+import stockstream.logic.elections.LeaderboardUpdate;
+import stockstream.logic.elections.LiveLeaderboard;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LeaderboardTest {
+
+    @Test
+    public void testGetTop_votesForThreeCandidates_expectMostVotedFirst() {
+        final Leaderboard<String> leaderboard = new Leaderboard<>(1);
+
+        leaderboard.increment("a");
+        leaderboard.increment("b");
+        leaderboard.increment("b");
+        leaderboard.increment("c");
+        leaderboard.increment("c");
+        leaderboard.increment("c");
+
+        assertEquals(ImmutableList.of("c", "b"), leaderboard.getTop(2));
+        assertEquals(ImmutableList.of("c", "b", "a"), leaderboard.getRanking());
+    }
+
+    @Test
+    public void testDecrement_candidateLosesAllVotes_expectLeftOutOfRanking() {
+        final Leaderboard<String> leaderboard = new Leaderboard<>(1);
+
+        leaderboard.increment("a");
+        leaderboard.increment("b");
+        leaderboard.decrement("a");
+
+        assertEquals(ImmutableList.of("b"), leaderboard.getRanking());
+        assertEquals(0, leaderboard.getCount("a"));
+    }
+
+    @Test
+    public void testGetTop_tiedCandidatesSameSeed_expectSameOrderRegardlessOfHistory() {
+        final Leaderboard<String> first = new Leaderboard<>(42);
+        final Leaderboard<String> second = new Leaderboard<>(42);
+
+        for (final String candidate : ImmutableList.of("a", "b", "c", "d")) {
+            first.increment(candidate);
+            second.increment(candidate);
+        }
+        second.increment("a");
+        second.increment("c");
+        second.decrement("a");
+        second.decrement("c");
+
+        assertEquals(first.getRanking(), second.getRanking());
+        assertEquals(first.getTop(2), second.getTop(2));
+    }
+
+    @Test
+    public void testRandomVotes_manyCandidates_expectRankingMatchesCounts() {
+        final Leaderboard<Integer> leaderboard = new Leaderboard<>(7);
+        final Map<Integer, Integer> expectedCounts = new HashMap<>();
+        final Random random = new Random(7);
+
+        for (int i = 0; i < 20000; ++i) {
+            final int candidate = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                leaderboard.decrement(candidate);
+                expectedCounts.computeIfPresent(candidate, (key, count) -> count > 0 ? count - 1 : 0);
+            } else {
+                leaderboard.increment(candidate);
+                expectedCounts.merge(candidate, 1, Integer::sum);
+            }
+        }
+
+        final List<Integer> ranking = leaderboard.getRanking();
+        final long votedCandidates = expectedCounts.values().stream().filter(count -> count > 0).count();
+
+        assertEquals(votedCandidates, ranking.size());
+        for (int rank = 0; rank < ranking.size(); ++rank) {
+            final int count = leaderboard.getCount(ranking.get(rank));
+            assertEquals(expectedCounts.get(ranking.get(rank)).intValue(), count);
+            if (rank > 0) {
+                assertTrue(leaderboard.getCount(ranking.get(rank - 1)) >= count);
+            }
+        }
+        assertEquals(ranking.subList(0, 10), leaderboard.getTop(10));
+    }
+
+    @Test
+    public void testLiveLeaderboard_burstOfVotes_expectImmediateAndOneTrailingUpdate() throws InterruptedException {
+        final PubSub pubSub = new PubSub();
+        final List<LeaderboardUpdate> updates = new CopyOnWriteArrayList<>();
+        pubSub.subscribeFunctionToClassType((Function<LeaderboardUpdate, Void>) update -> {
+            updates.add(update);
+            return null;
+        }, LeaderboardUpdate.class);
+
+        final AtomicInteger votes = new AtomicInteger(0);
+        final LiveLeaderboard liveLeaderboard = new LiveLeaderboard("test", () -> "test:1",
+                () -> ImmutableList.of(new LeaderboardUpdate.Standing("a", "a", votes.get())),
+                pubSub, new Scheduler(), 100);
+
+        for (int i = 0; i < 5; ++i) {
+            votes.incrementAndGet();
+            liveLeaderboard.onVote();
+        }
+        Thread.sleep(250);
+        liveLeaderboard.onVote();
+        Thread.sleep(50);
+
+        assertEquals(2, updates.size());
+        assertEquals(1, updates.get(0).getStandings().get(0).getVotes());
+        assertEquals(5, updates.get(1).getStandings().get(0).getVotes());
+        assertEquals(ImmutableList.of(0), updates.get(1).getChangedRanks());
+        assertEquals(2, updates.get(1).getSequence());
+    }
+
+    @Test(timeout = 10000)
+    public void testLiveLeaderboard_readerStalledPastQueueCapacity_expectVotesNeverBlocked() throws InterruptedException {
+        final PubSub pubSub = new PubSub();
+        final CountDownLatch readerReleased = new CountDownLatch(1);
+        final List<LeaderboardUpdate> updates = new CopyOnWriteArrayList<>();
+        pubSub.subscribeFunctionToClassType((Function<LeaderboardUpdate, Void>) update -> {
+            try {
+                readerReleased.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            updates.add(update);
+            return null;
+        }, LeaderboardUpdate.class);
+
+        final AtomicInteger votes = new AtomicInteger(0);
+        final LiveLeaderboard liveLeaderboard = new LiveLeaderboard("test", () -> "test:1",
+                () -> ImmutableList.of(new LeaderboardUpdate.Standing("a", "a", votes.get())),
+                pubSub, new Scheduler(), 0);
+
+        for (int i = 0; i < 1100; ++i) {
+            votes.incrementAndGet();
+            liveLeaderboard.onVote();
+        }
+        readerReleased.countDown();
+
+        while (updates.size() < 1100) {
+            Thread.sleep(10);
+        }
+        assertEquals(1100, updates.get(1099).getStandings().get(0).getVotes());
+    }
+
+}
@@ -1,18 +1,64 @@
 package stockstream.logic;
 
 
+import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
+import stockstream.logic.pubsub.EventJournal;
+import stockstream.logic.pubsub.InMemoryPubSubMetrics;
+import stockstream.logic.pubsub.OverflowPolicy;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PubSubTest {
 
+    private static class FailingRunnable implements Runnable {
+        @Override
+        public void run() {
+            throw new IllegalStateException("failing subscriber");
+        }
+    }
+
+    private static class ErrorRunnable implements Runnable {
+        @Override
+        public void run() {
+            throw new AssertionError("subscriber error");
+        }
+    }
+
+    private static class SlowRunnable implements Runnable {
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @InjectMocks
     private PubSub pubSub;
 
@@ -72,4 +118,396 @@ public class PubSubTest {
         assertEquals(false, applyMethodCalled.booleanValue());
     }
 
+    @Test
+    public void testPublish_runnableSubscribed_expectHandleCompletesAfterRunnable() throws Exception {
+        final MutableBoolean applyMethodCalled = new MutableBoolean(false);
+
+        pubSub.subscribeRunnableToClassType(() -> applyMethodCalled.setValue(true), String.class);
+
+        pubSub.publish(String.class, "testing123").get(5, TimeUnit.SECONDS);
+
+        assertEquals(true, applyMethodCalled.booleanValue());
+    }
+
+    @Test
+    public void testPublish_dropOldestQueueFull_expectOldestPendingCancelled() throws Exception {
+        final CountDownLatch subscriberStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSubscriber = new CountDownLatch(1);
+
+        pubSub.configureClassType(String.class, 1, OverflowPolicy.DROP_OLDEST);
+        pubSub.subscribeRunnableToClassType(() -> {
+            subscriberStarted.countDown();
+            try {
+                releaseSubscriber.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, String.class);
+
+        final CompletableFuture<Void> first = pubSub.publish(String.class, "first");
+        assertTrue(subscriberStarted.await(5, TimeUnit.SECONDS));
+
+        final CompletableFuture<Void> second = pubSub.publish(String.class, "second");
+        final CompletableFuture<Void> third = pubSub.publish(String.class, "third");
+
+        releaseSubscriber.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    public void testPublishAsync_blockPolicyQueueFull_expectCallerNotBlocked() throws Exception {
+        final CountDownLatch subscriberStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSubscriber = new CountDownLatch(1);
+
+        pubSub.configureClassType(String.class, 1, OverflowPolicy.BLOCK);
+        pubSub.subscribeRunnableToClassType(() -> {
+            subscriberStarted.countDown();
+            try {
+                releaseSubscriber.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, String.class);
+
+        pubSub.publishAsync(String.class, "first");
+        assertTrue(subscriberStarted.await(5, TimeUnit.SECONDS));
+
+        pubSub.publishAsync(String.class, "second");
+        final CompletableFuture<Void> third = pubSub.publishAsync(String.class, "third");
+
+        assertEquals(1, pubSub.getInFlightCount());
+        assertEquals(1, pubSub.getQueueDepth(String.class));
+        assertEquals(1, pubSub.getWaitingPublisherCount());
+
+        releaseSubscriber.countDown();
+
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(0, pubSub.getQueueDepth());
+    }
+
+    @Test
+    public void testPublishAsync_blockPolicyFilledPastPoolSize_expectEveryEventDeliveredInOrder() throws Exception {
+        final CountDownLatch releaseSubscriber = new CountDownLatch(1);
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        pubSub.configureClassType(String.class, 1, OverflowPolicy.BLOCK);
+        pubSub.subscribeFunctionToClassType((Function<String, Void>) message -> {
+            try {
+                releaseSubscriber.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(message);
+            return null;
+        }, String.class);
+
+        final List<CompletableFuture<Void>> handles = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            handles.add(pubSub.publishAsync(String.class, String.valueOf(i)));
+        }
+
+        assertTrue(pubSub.getWaitingPublisherCount() >= 198);
+
+        releaseSubscriber.countDown();
+
+        CompletableFuture.allOf(handles.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(200, received.size());
+        for (int i = 0; i < received.size(); ++i) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+        assertEquals(0, pubSub.getWaitingPublisherCount());
+    }
+
+    @Test
+    public void testPublish_interfaceSubscribed_expectRunnableCalled() {
+        final MutableBoolean applyMethodCalled = new MutableBoolean(false);
+
+        pubSub.subscribeRunnableToClassType(() -> applyMethodCalled.setValue(true), CharSequence.class);
+
+        pubSub.publishClassType(String.class, "testing123");
+
+        assertEquals(true, applyMethodCalled.booleanValue());
+    }
+
+    @Test
+    public void testPublish_sameRunnableSubscribedToTypeAndSupertypes_expectRunnableCalledOnce() {
+        final AtomicInteger callCount = new AtomicInteger();
+        final Runnable runnable = callCount::incrementAndGet;
+
+        pubSub.subscribeRunnableToClassType(runnable, String.class);
+        pubSub.subscribeRunnableToClassType(runnable, CharSequence.class);
+        pubSub.subscribeRunnableToClassType(runnable, Object.class);
+
+        pubSub.publishClassType(String.class, "testing123");
+
+        assertEquals(1, callCount.get());
+    }
+
+    @Test
+    public void testPublish_runnableUnsubscribed_expectRunnableNotCalled() {
+        final MutableBoolean applyMethodCalled = new MutableBoolean(false);
+        final Runnable runnable = () -> applyMethodCalled.setValue(true);
+
+        pubSub.subscribeRunnableToClassType(runnable, String.class);
+        pubSub.publishClassType(String.class, "testing123");
+        applyMethodCalled.setValue(false);
+
+        pubSub.unsubscribeFromClassType(runnable, String.class);
+        pubSub.publishClassType(String.class, "testing123");
+
+        assertFalse(applyMethodCalled.booleanValue());
+    }
+
+    @Test
+    public void testPublish_coalescingFunctionSubscribedBurst_expectOneBatchInPublishOrder() throws Exception {
+        final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        final CountDownLatch batchReceived = new CountDownLatch(1);
+
+        pubSub.subscribeCoalescingFunctionToClassType((Function<List<Integer>, Void>) batch -> {
+            batches.add(batch);
+            batchReceived.countDown();
+            return null;
+        }, Integer.class, 200, 5000, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 5; ++i) {
+            pubSub.publish(Integer.class, i);
+        }
+
+        assertTrue(batchReceived.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+
+        assertEquals(1, batches.size());
+        assertEquals(ImmutableList.of(0, 1, 2, 3, 4), batches.get(0));
+    }
+
+    @Test
+    public void testPublishKeyed_interleavedKeys_expectPublishOrderPerKey() throws Exception {
+        final Map<Integer, List<Integer>> keyToReceived = new ConcurrentHashMap<>();
+
+        pubSub.subscribeFunctionToClassType((Function<int[], Void>) keyAndSequence -> {
+            try {
+                Thread.sleep(keyAndSequence[1] % 3);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            keyToReceived.computeIfAbsent(keyAndSequence[0], list -> new CopyOnWriteArrayList<>()).add(keyAndSequence[1]);
+            return null;
+        }, int[].class);
+
+        final List<CompletableFuture<Void>> handles = new ArrayList<>();
+        for (int sequence = 0; sequence < 40; ++sequence) {
+            final int key = sequence % 4;
+            handles.add(pubSub.publishKeyed(int[].class, key, new int[] {key, sequence}));
+        }
+
+        CompletableFuture.allOf(handles.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        for (int key = 0; key < 4; ++key) {
+            final List<Integer> received = keyToReceived.get(key);
+            assertEquals(10, received.size());
+            for (int i = 1; i < received.size(); ++i) {
+                assertTrue(received.get(i - 1) < received.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPublish_failingSubscriber_expectPublishAndFailureRecorded() {
+        final InMemoryPubSubMetrics metrics = new InMemoryPubSubMetrics();
+        pubSub.setMetrics(metrics);
+
+        pubSub.subscribeRunnableToClassType(new FailingRunnable(), String.class);
+        pubSub.publishClassType(String.class, "testing123");
+
+        final InMemoryPubSubMetrics.SubscriberMetrics subscriberMetrics = metrics.getSubscriberMetrics(String.class, FailingRunnable.class.getName());
+
+        assertEquals(1, metrics.getTypeMetrics(String.class).getPublishes().sum());
+        assertEquals(1, metrics.getTypeMetrics(String.class).getQueueWait().getCount());
+        assertEquals(1, subscriberMetrics.getFailures().sum());
+        assertEquals(1, subscriberMetrics.getHandlerLatency().getCount());
+    }
+
+    @Test
+    public void testPublish_subscriberThrowsError_expectLaterPublishesDelivered() throws Exception {
+        final InMemoryPubSubMetrics metrics = new InMemoryPubSubMetrics();
+        pubSub.setMetrics(metrics);
+
+        pubSub.subscribeRunnableToClassType(new ErrorRunnable(), String.class);
+        pubSub.subscribeRunnableToClassType(new SlowRunnable(), String.class);
+
+        pubSub.publish(String.class, "first").get(5, TimeUnit.SECONDS);
+        pubSub.publish(String.class, "second").get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, metrics.getSubscriberMetrics(String.class, ErrorRunnable.class.getName()).getFailures().sum());
+        assertEquals(2, metrics.getSubscriberMetrics(String.class, SlowRunnable.class.getName()).getHandlerLatency().getCount());
+    }
+
+    @Test
+    public void testPublish_subscriberPublishesToOwnFullBlockQueue_expectNoDeadlock() throws Exception {
+        final List<CompletableFuture<Void>> nestedHandles = new CopyOnWriteArrayList<>();
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        pubSub.configureClassType(String.class, 1, OverflowPolicy.BLOCK);
+        pubSub.subscribeFunctionToClassType((Function<String, Void>) message -> {
+            received.add(message);
+            if ("first".equals(message)) {
+                for (int i = 0; i < 5; ++i) {
+                    nestedHandles.add(pubSub.publish(String.class, "nested" + i));
+                }
+            }
+            return null;
+        }, String.class);
+
+        pubSub.publish(String.class, "first").get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(nestedHandles.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(ImmutableList.of("first", "nested0", "nested1", "nested2", "nested3", "nested4"), received);
+    }
+
+    @Test
+    public void testPublish_subscriberPublishesToOtherSaturatedBlockQueue_expectNoDeadlock() throws Exception {
+        final CountDownLatch publisherFinished = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> nestedHandles = new CopyOnWriteArrayList<>();
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        pubSub.configureClassType(Integer.class, 1, OverflowPolicy.BLOCK);
+        pubSub.subscribeFunctionToClassType((Function<Integer, Void>) number -> {
+            try {
+                publisherFinished.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(number);
+            return null;
+        }, Integer.class);
+        pubSub.subscribeFunctionToClassType((Function<String, Void>) message -> {
+            for (int i = 0; i < 10; ++i) {
+                nestedHandles.add(pubSub.publish(Integer.class, i));
+            }
+            publisherFinished.countDown();
+            return null;
+        }, String.class);
+
+        pubSub.publish(String.class, "publisher").get(2, TimeUnit.SECONDS);
+        CompletableFuture.allOf(nestedHandles.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), received);
+    }
+
+    @Test
+    public void testPublish_subscriberOverBudget_expectSlowDeliveryRecorded() {
+        final InMemoryPubSubMetrics metrics = new InMemoryPubSubMetrics();
+        pubSub.setMetrics(metrics);
+        pubSub.setSlowSubscriberBudget(10, TimeUnit.MILLISECONDS);
+
+        pubSub.subscribeRunnableToClassType(new SlowRunnable(), String.class);
+        pubSub.publishClassType(String.class, "testing123");
+
+        assertEquals(1, metrics.getSubscriberMetrics(String.class, SlowRunnable.class.getName()).getSlowDeliveries().sum());
+    }
+
+    @Test
+    public void testSubscribeDurable_restartedAfterPublish_expectMissedEventsReplayedOnce() throws Exception {
+        final File journalDirectory = temporaryFolder.newFolder();
+
+        pubSub.enableJournal(String.class, journalDirectory);
+        pubSub.publishClassType(String.class, "beforeRestart");
+        pubSub.flushJournals();
+
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final Function<String, Void> onReceive = str -> {
+            received.add(str);
+            return null;
+        };
+
+        final PubSub restartedPubSub = new PubSub();
+        restartedPubSub.enableJournal(String.class, journalDirectory);
+        restartedPubSub.subscribeDurableFunctionToClassType(onReceive, String.class, "test");
+        restartedPubSub.publishClassType(String.class, "afterRestart");
+        restartedPubSub.flushJournals();
+
+        assertEquals(ImmutableList.of("beforeRestart", "afterRestart"), received);
+
+        final PubSub resumedPubSub = new PubSub();
+        resumedPubSub.enableJournal(String.class, journalDirectory);
+        resumedPubSub.subscribeDurableFunctionToClassType(onReceive, String.class, "test");
+
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testSubscribeDurable_handlerThrows_expectEventSkippedAndCheckpointMoved() throws Exception {
+        final File journalDirectory = temporaryFolder.newFolder();
+
+        pubSub.enableJournal(String.class, journalDirectory);
+        pubSub.publishClassType(String.class, "poison");
+        pubSub.publishClassType(String.class, "beforeRestart");
+        pubSub.flushJournals();
+
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final AtomicInteger poisonAttempts = new AtomicInteger();
+        final Function<String, Void> onReceive = str -> {
+            if (str.startsWith("poison")) {
+                poisonAttempts.incrementAndGet();
+                throw new IllegalStateException(str);
+            }
+            received.add(str);
+            return null;
+        };
+
+        final PubSub restartedPubSub = new PubSub();
+        restartedPubSub.enableJournal(String.class, journalDirectory);
+        restartedPubSub.subscribeDurableFunctionToClassType(onReceive, String.class, "test");
+        restartedPubSub.publishClassType(String.class, "poisonLive");
+        restartedPubSub.publishClassType(String.class, "afterRestart");
+        restartedPubSub.flushJournals();
+
+        assertEquals(ImmutableList.of("beforeRestart", "afterRestart"), received);
+        assertEquals(2, poisonAttempts.get());
+
+        final PubSub resumedPubSub = new PubSub();
+        resumedPubSub.enableJournal(String.class, journalDirectory);
+        resumedPubSub.subscribeDurableFunctionToClassType(onReceive, String.class, "test");
+        resumedPubSub.publishClassType(String.class, "afterResume");
+
+        assertEquals(ImmutableList.of("beforeRestart", "afterRestart", "afterResume"), received);
+        assertEquals(2, poisonAttempts.get());
+    }
+
+    @Test
+    public void testJournalCheckpoint_handledOutOfOrder_expectCheckpointOnlyPastContiguousRun() throws Exception {
+        final EventJournal journal = new EventJournal(String.class, temporaryFolder.newFolder(), 4096);
+        for (int i = 0; i < 4; ++i) {
+            journal.append("event" + i);
+        }
+
+        assertEquals(0, journal.openCheckpoint("test"));
+
+        journal.checkpoint("test", 2);
+        assertEquals(0, journal.getCheckpoint("test"));
+
+        journal.checkpoint("test", 1);
+        assertEquals(2, journal.getCheckpoint("test"));
+
+        journal.checkpoint("test", 4);
+        journal.resolveDropped(3);
+        assertEquals(4, journal.getCheckpoint("test"));
+
+        journal.close();
+    }
+
+    @Test
+    public void testJournalCheckpoint_droppedEventInactiveSubscriber_expectCheckpointNotMoved() throws Exception {
+        final EventJournal journal = new EventJournal(String.class, temporaryFolder.newFolder(), 4096);
+        journal.append("event");
+
+        journal.resolveDropped(1);
+
+        assertEquals(0, journal.getCheckpoint("test"));
+        journal.close();
+    }
+
 }
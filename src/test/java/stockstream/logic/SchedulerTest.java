@@ -5,8 +5,32 @@ import org.apache.commons.lang.mutable.MutableBoolean;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
+import stockstream.data.MarketPhase;
+import stockstream.logic.scheduler.JobHandle;
+import stockstream.logic.scheduler.JobSnapshot;
+import stockstream.logic.scheduler.JobTimer;
+import stockstream.logic.scheduler.MarketSchedule;
+import stockstream.logic.scheduler.MarketScheduledJob;
+import stockstream.logic.scheduler.OverrunPolicy;
+import stockstream.logic.scheduler.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SchedulerTest {
 
@@ -53,4 +77,312 @@ public class SchedulerTest {
         assertEquals(true, runnableCalled.booleanValue());
     }
 
+    @Test
+    public void testCancelJob_periodicJobScheduled_expectNoRunsAfterCancel() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+        final Runnable job = runs::incrementAndGet;
+
+        final JobHandle jobHandle = scheduler.scheduleJob(job, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+        scheduler.cancelJob(job);
+        Thread.sleep(20);
+        final int runsAtCancel = runs.get();
+        Thread.sleep(100);
+
+        assertTrue(runsAtCancel > 0);
+        assertTrue(jobHandle.isCancelled());
+        assertEquals(runsAtCancel, runs.get());
+        assertTrue(scheduler.getJobHandles().isEmpty());
+    }
+
+    @Test
+    public void testPause_periodicJobPausedThenResumed_expectRunsOnlyWhileActive() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        final JobHandle jobHandle = scheduler.scheduleJob(runs::incrementAndGet, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+        jobHandle.pause();
+        Thread.sleep(20);
+        final int runsAtPause = runs.get();
+        Thread.sleep(100);
+
+        assertEquals(runsAtPause, runs.get());
+
+        jobHandle.resume();
+        Thread.sleep(100);
+
+        assertTrue(runs.get() > runsAtPause);
+        jobHandle.cancel();
+    }
+
+    @Test
+    public void testReschedule_dateJobMovedLater_expectNotRunAtOriginalTime() throws InterruptedException {
+        final MutableBoolean runnableCalled = new MutableBoolean(false);
+
+        final JobHandle jobHandle = scheduler.scheduleJob(() -> runnableCalled.setValue(true), new DateTime().plusMillis(500));
+        jobHandle.reschedule(10, 0, TimeUnit.SECONDS);
+        Thread.sleep(700);
+
+        assertEquals(false, runnableCalled.booleanValue());
+        assertEquals(1, scheduler.getJobHandles().size());
+    }
+
+    @Test
+    public void testSchedule_dateJobRun_expectHandleDoneAndUnregistered() throws InterruptedException {
+        final JobHandle jobHandle = scheduler.scheduleJob(() -> { }, new DateTime().plusMillis(1));
+        Thread.sleep(200);
+
+        assertTrue(jobHandle.isDone());
+        assertTrue(scheduler.getJobHandles().isEmpty());
+    }
+
+    @Test
+    public void testSchedule_timerWheelSchedulerDateJob_expectScheduledMethodCalled() throws InterruptedException {
+        final Scheduler wheelScheduler = new Scheduler(true);
+        final MutableBoolean runnableCalled = new MutableBoolean(false);
+
+        wheelScheduler.scheduleJob(() -> runnableCalled.setValue(true), new DateTime().plusMillis(1));
+        Thread.sleep(200);
+
+        assertEquals(true, runnableCalled.booleanValue());
+    }
+
+    @Test
+    public void testTimerWheel_timersOnEveryLevel_expectEachFiredAtItsDeadline() {
+        final AtomicLong now = new AtomicLong(0);
+        final TimerWheel timerWheel = new TimerWheel(1, Runnable::run, now::get);
+        final long[] delays = {1, 255, 256, 300, 65535, 65536, 70000, 20000000};
+        final long[] firedAt = new long[delays.length];
+
+        for (int i = 0; i < delays.length; ++i) {
+            final int index = i;
+            timerWheel.schedule(() -> firedAt[index] = now.get(), delays[i], TimeUnit.MILLISECONDS);
+        }
+        while (timerWheel.getPendingCount() > 0) {
+            now.addAndGet(now.get() < 100000 ? 1 : 1000);
+            timerWheel.advance();
+        }
+
+        for (int i = 0; i < 7; ++i) {
+            assertEquals(delays[i], firedAt[i]);
+        }
+        assertTrue(firedAt[7] >= delays[7] && firedAt[7] < delays[7] + 1000);
+    }
+
+    @Test
+    public void testTimerWheel_timerCancelled_expectNeverFired() {
+        final AtomicLong now = new AtomicLong(0);
+        final TimerWheel timerWheel = new TimerWheel(10, Runnable::run, now::get);
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        final JobTimer.Timeout cancelled = timerWheel.schedule(runs::incrementAndGet, 5, TimeUnit.SECONDS);
+        timerWheel.schedule(runs::incrementAndGet, 6, TimeUnit.SECONDS);
+        cancelled.cancel();
+
+        assertEquals(1, timerWheel.getPendingCount());
+
+        now.set(10000);
+        timerWheel.advance();
+
+        assertEquals(1, runs.get());
+        assertEquals(0, timerWheel.getPendingCount());
+    }
+
+    @Test
+    public void testNotifyEventAsync_oneJobBlocked_expectOtherJobsRunAndFutureWaitsForAll() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastJobsRun = new CountDownLatch(3);
+
+        scheduler.scheduleJob(() -> {
+            try {
+                release.await();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, Event.GAME_TICK);
+        for (int i = 0; i < 3; ++i) {
+            scheduler.scheduleJob(fastJobsRun::countDown, Event.GAME_TICK);
+        }
+
+        final CompletableFuture<Void> completion = scheduler.notifyEventAsync(Event.GAME_TICK);
+
+        assertTrue(fastJobsRun.await(1, TimeUnit.SECONDS));
+        assertFalse(completion.isDone());
+
+        release.countDown();
+        completion.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNotifyEvent_failingJobRegistered_expectOtherJobsStillRun() {
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        scheduler.scheduleJob(() -> {
+            throw new IllegalStateException("failing job");
+        }, Event.GAME_TICK);
+        scheduler.scheduleJob(runs::incrementAndGet, Event.GAME_TICK);
+        scheduler.scheduleJob(runs::incrementAndGet, Event.GAME_TICK);
+        scheduler.notifyEvent(Event.GAME_TICK);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testNotifyEventAsync_jobThrowsError_expectOtherJobsRunAndCompletedExceptionally() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        scheduler.scheduleJob(() -> {
+            throw new AssertionError("failing job");
+        }, Event.GAME_TICK);
+        scheduler.scheduleJob(runs::incrementAndGet, Event.GAME_TICK);
+        scheduler.scheduleJob(runs::incrementAndGet, Event.GAME_TICK);
+
+        final CompletableFuture<Void> completion = scheduler.notifyEventAsync(Event.GAME_TICK);
+
+        try {
+            completion.get(1, TimeUnit.SECONDS);
+            fail("Expected the job's Error to fail the completion.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        } catch (final TimeoutException e) {
+            fail("Completion never fired after a job threw an Error.");
+        }
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testOverrunPolicy_skipAndJobOverruns_expectMissedRunsSkippedAndCounted() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+        final Runnable job = () -> {
+            if (runs.incrementAndGet() == 1) {
+                sleep(110);
+            }
+        };
+
+        final long scheduledMillis = System.currentTimeMillis();
+        final JobHandle jobHandle = scheduler.scheduleJob(job, 0, 50, TimeUnit.MILLISECONDS, 0, OverrunPolicy.SKIP);
+        Thread.sleep(130);
+        final JobSnapshot snapshot = jobHandle.snapshot();
+        jobHandle.cancel();
+
+        assertEquals(1, snapshot.getRunCount());
+        assertEquals(1, snapshot.getOverrunCount());
+        assertEquals(2, snapshot.getSkippedRunCount());
+        assertTrue(snapshot.getLastDurationMillis() >= 110);
+        assertEquals(150, snapshot.getNextFireTimeMillis() - scheduledMillis, 10);
+    }
+
+    @Test
+    public void testOverrunPolicy_coalesceAndJobOverruns_expectOneImmediateCatchUpRun() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+        final Runnable job = () -> {
+            if (runs.incrementAndGet() == 1) {
+                sleep(110);
+            }
+        };
+
+        final JobHandle jobHandle = scheduler.scheduleJob(job, 0, 50, TimeUnit.MILLISECONDS, 0, OverrunPolicy.COALESCE);
+        Thread.sleep(130);
+        final JobSnapshot snapshot = jobHandle.snapshot();
+        jobHandle.cancel();
+
+        assertEquals(2, snapshot.getRunCount());
+        assertEquals(1, snapshot.getOverrunCount());
+        assertEquals(1, snapshot.getSkippedRunCount());
+        assertTrue(snapshot.getLastQueueLagMillis() >= 5);
+    }
+
+    @Test
+    public void testGetJobSnapshots_jobsRegistered_expectSortedByNextFireTime() {
+        final JobHandle later = scheduler.scheduleJob(() -> { }, 10, 10, TimeUnit.MINUTES);
+        final JobHandle sooner = scheduler.scheduleJob(() -> { }, new DateTime().plusMinutes(1));
+
+        final List<JobSnapshot> snapshots = scheduler.getJobSnapshots();
+        later.cancel();
+        sooner.cancel();
+
+        assertEquals(2, snapshots.size());
+        assertEquals(0, snapshots.get(0).getPeriodMillis());
+        assertEquals(TimeUnit.MINUTES.toMillis(10), snapshots.get(1).getPeriodMillis());
+    }
+
+    @Test
+    public void testMarketSchedule_phaseChanges_expectJobFollowsPhasePeriodOrSuspends() throws InterruptedException {
+        final AtomicReference<MarketPhase> marketPhase = new AtomicReference<>(MarketPhase.CLOSED);
+        final MarketSchedule marketSchedule = new MarketSchedule(marketPhase::get)
+                .withPeriod(MarketPhase.REGULAR_HOURS, 10, TimeUnit.MILLISECONDS)
+                .withPeriod(MarketPhase.AFTER_HOURS, 1, TimeUnit.HOURS);
+        final AtomicInteger runs = new AtomicInteger(0);
+        final JobHandle jobHandle = scheduler.scheduleJob(runs::incrementAndGet, 1, 1, TimeUnit.HOURS);
+        final MarketScheduledJob marketScheduledJob = new MarketScheduledJob(jobHandle, marketSchedule);
+
+        marketScheduledJob.refresh();
+        assertTrue(jobHandle.isPaused());
+
+        marketPhase.set(MarketPhase.REGULAR_HOURS);
+        marketScheduledJob.refresh();
+        Thread.sleep(300);
+        assertTrue(runs.get() > 2);
+
+        marketPhase.set(MarketPhase.AFTER_HOURS);
+        marketScheduledJob.refresh();
+        Thread.sleep(20);
+        final int runsAfterHours = runs.get();
+        Thread.sleep(100);
+
+        assertEquals(runsAfterHours, runs.get());
+        assertEquals(TimeUnit.HOURS.toMillis(1), jobHandle.snapshot().getPeriodMillis());
+        jobHandle.cancel();
+    }
+
+    @Test
+    public void testMarketSchedule_startJitterOnStartAndResume_expectFirstRunsSpreadWithinJitter() {
+        final AtomicReference<MarketPhase> marketPhase = new AtomicReference<>(MarketPhase.REGULAR_HOURS);
+        final MarketSchedule marketSchedule = new MarketSchedule(marketPhase::get)
+                .withPeriod(MarketPhase.REGULAR_HOURS, 1, TimeUnit.HOURS)
+                .withStartJitter(1, TimeUnit.HOURS);
+
+        final List<JobHandle> jobHandles = new ArrayList<>();
+        final List<MarketScheduledJob> marketScheduledJobs = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            final JobHandle jobHandle = scheduler.scheduleJob(() -> { }, 1, 1, TimeUnit.HOURS);
+            jobHandles.add(jobHandle);
+            marketScheduledJobs.add(new MarketScheduledJob(jobHandle, marketSchedule));
+        }
+
+        final long startMillis = System.currentTimeMillis();
+        marketScheduledJobs.forEach(MarketScheduledJob::refresh);
+        assertFirstRunsSpread(jobHandles, startMillis);
+
+        marketPhase.set(MarketPhase.CLOSED);
+        marketScheduledJobs.forEach(MarketScheduledJob::refresh);
+        jobHandles.forEach(jobHandle -> assertTrue(jobHandle.isPaused()));
+
+        final long resumeMillis = System.currentTimeMillis();
+        marketPhase.set(MarketPhase.REGULAR_HOURS);
+        marketScheduledJobs.forEach(MarketScheduledJob::refresh);
+        assertFirstRunsSpread(jobHandles, resumeMillis);
+
+        jobHandles.forEach(JobHandle::cancel);
+    }
+
+    private static void assertFirstRunsSpread(final List<JobHandle> jobHandles, final long fromMillis) {
+        final Set<Long> fireTimes = new HashSet<>();
+        for (final JobHandle jobHandle : jobHandles) {
+            final long fireTimeMillis = jobHandle.getNextFireTimeMillis();
+            assertTrue(fireTimeMillis >= fromMillis);
+            assertTrue(fireTimeMillis <= System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            fireTimes.add(fireTimeMillis);
+        }
+        assertTrue(fireTimes.size() > 1);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
@@ -34,4 +34,18 @@ public class VoteComparatorTest {
         assertEquals("c", topCandidate);
     }
 
+    @Test
+    public void testCompare_tiedCandidates_expectConsistentOrder() {
+        final Map<String, Set<Voter>> candidatesToPlayers = ImmutableMap.of("a", ImmutableSet.of(TestDataUtils.createVoter("a")),
+                                                                            "b", ImmutableSet.of(TestDataUtils.createVoter("b")));
+
+        final VoteComparator<String> comparator = new VoteComparator<>(candidatesToPlayers);
+
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(-comparator.compare("a", "b"), comparator.compare("b", "a"));
+            assertEquals(comparator.compare("a", "b"), comparator.compare("a", "b"));
+        }
+        assertEquals(0, comparator.compare("a", "a"));
+    }
+
 }
@@ -0,0 +1,91 @@
+package stockstream.logic;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import stockstream.TestDataUtils;
+import stockstream.logic.elections.Election;
+import stockstream.logic.elections.PrefixTriePrefilter;
+import stockstream.logic.elections.VotePrefilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class VotePrefilterTest {
+
+    private final VotePrefilter votePrefilter = new PrefixTriePrefilter(ImmutableList.of("!buy", "!sell", "!skip"));
+
+    @Test
+    public void testMightBeVote_messageStartsWithKeyword_expectTrue() {
+        assertTrue(votePrefilter.mightBeVote("!buy AMZN"));
+        assertTrue(votePrefilter.mightBeVote("  !SELL aapl"));
+        assertTrue(votePrefilter.mightBeVote("!skip"));
+    }
+
+    @Test
+    public void testMightBeVote_chatterOrPartialKeyword_expectFalse() {
+        assertFalse(votePrefilter.mightBeVote("hello chat"));
+        assertFalse(votePrefilter.mightBeVote("!bu"));
+        assertFalse(votePrefilter.mightBeVote("!hold"));
+        assertFalse(votePrefilter.mightBeVote(""));
+    }
+
+    @Test
+    public void testReceiveVote_prefilterAndParsedVoteCache_expectParserCalledOncePerDistinctVote() {
+        final AtomicInteger parses = new AtomicInteger(0);
+        final AtomicInteger votes = new AtomicInteger(0);
+
+        final Election<TestCandidate> election = new Election<>("test", TestCandidate.class, 1)
+                .withVotePrefilter(votePrefilter)
+                .withParsedVoteCache(100)
+                .withMessageParser(s -> {
+                    parses.incrementAndGet();
+                    return Optional.of(new TestCandidate(s));
+                })
+                .withInstantElection((candidate, voter) -> votes.incrementAndGet());
+
+        for (int i = 0; i < 10; ++i) {
+            election.receiveVote("!buy AMZN", TestDataUtils.createVoter("p" + i));
+            election.receiveVote("lol", TestDataUtils.createVoter("p" + i));
+        }
+
+        assertEquals(1, parses.get());
+        assertEquals(10, votes.get());
+    }
+
+    @Test
+    public void testReceiveVote_parsedVoteCacheSameMessageTwice_expectSeparateCandidates() {
+        final List<TestCandidate> votes = new ArrayList<>();
+
+        final Election<TestCandidate> election = new Election<>("test", TestCandidate.class, 1)
+                .withParsedVoteCache(100)
+                .withMessageParser(s -> Optional.of(new TestCandidate(s)))
+                .withInstantElection((candidate, voter) -> votes.add(candidate));
+
+        election.receiveVote("!buy AMZN", TestDataUtils.createVoter("p1"));
+        votes.get(0).setCandidate("!sell AMZN");
+        election.receiveVote("!buy AMZN", TestDataUtils.createVoter("p2"));
+
+        assertEquals(new TestCandidate("!buy AMZN"), votes.get(1));
+        assertNotSame(votes.get(0), votes.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReceiveVote_parsedVoteCacheParserThrows_expectParserExceptionUnwrapped() {
+        final Election<TestCandidate> election = new Election<>("test", TestCandidate.class, 1)
+                .withParsedVoteCache(100)
+                .withMessageParser(s -> {
+                    throw new IllegalArgumentException(s);
+                })
+                .withInstantElection((candidate, voter) -> { });
+
+        election.receiveVote("!buy AMZN", TestDataUtils.createVoter("p1"));
+    }
+
+}
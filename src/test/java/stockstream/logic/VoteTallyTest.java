@@ -0,0 +1,65 @@
+package stockstream.logic;
+
+import org.junit.Before;
+import org.junit.Test;
+import stockstream.TestDataUtils;
+import stockstream.data.Voter;
+import stockstream.logic.elections.VoteTally;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class VoteTallyTest {
+
+    private VoteTally<TestCandidate> voteTally;
+
+    @Before
+    public void setupTest() {
+        voteTally = new VoteTally<>("test:1");
+    }
+
+    @Test
+    public void testRecordVote_votesForTwoCandidates_expectCountsPerCandidate() {
+        voteTally.recordVote(TestDataUtils.createVoter("p1"), new TestCandidate("!buy"));
+        voteTally.recordVote(TestDataUtils.createVoter("p2"), new TestCandidate("!buy"));
+        voteTally.recordVote(TestDataUtils.createVoter("p3"), new TestCandidate("!sell"));
+
+        final Map<TestCandidate, Integer> candidateToVoteCount = voteTally.getCandidateToVoteCount();
+
+        assertEquals(2, candidateToVoteCount.get(new TestCandidate("!buy")).intValue());
+        assertEquals(1, candidateToVoteCount.get(new TestCandidate("!sell")).intValue());
+        assertEquals(3, voteTally.getVoterCount());
+    }
+
+    @Test
+    public void testGetTopCandidates_sameTiedVotesInOtherOrder_expectSameRanking() {
+        final VoteTally<TestCandidate> reloadedTally = new VoteTally<>("test:1");
+
+        for (int i = 0; i < 20; ++i) {
+            voteTally.recordVote(TestDataUtils.createVoter("p" + i), new TestCandidate("!c" + i));
+        }
+        for (int i = 19; i >= 0; --i) {
+            reloadedTally.recordVote(TestDataUtils.createVoter("p" + i), new TestCandidate("!c" + i));
+        }
+
+        assertEquals(voteTally.getTopCandidates(20), reloadedTally.getTopCandidates(20));
+    }
+
+    @Test
+    public void testRecordVote_voterChangesVote_expectOnlyLatestVoteCounted() {
+        final Voter voter = TestDataUtils.createVoter("p1");
+
+        voteTally.recordVote(voter, new TestCandidate("!buy"));
+        voteTally.recordVote(voter, new TestCandidate("!sell"));
+
+        final Map<TestCandidate, Set<Voter>> candidateToVoters = voteTally.getCandidateToVoters();
+
+        assertFalse(candidateToVoters.containsKey(new TestCandidate("!buy")));
+        assertEquals(1, candidateToVoters.get(new TestCandidate("!sell")).size());
+        assertEquals(new TestCandidate("!sell"), voteTally.getVoterToCandidate().get(voter));
+    }
+
+}